@@ -0,0 +1,390 @@
+package com.zab.ide.config;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip for text and JSON responses only.
+ * Servlet-container compression stays off because it cannot tell a JSON
+ * listing from a binary download; this filter decides per request from the
+ * path, the Range header and the content type the controller produced.
+ * Downloads and ranged transfers pass through. Streamed (async) bodies
+ * such as the NDJSON reports are compressed as they are written, with each
+ * flush pushed through as a gzip sync flush; the stream is finished on the
+ * async dispatch that completes the request.
+ */
+public class CompressionFilter extends OncePerRequestFilter {
+
+    // Responses below this are sent as-is; gzip overhead is not worth it
+    private static final int MIN_SIZE = 1024;
+    // Small payloads get maximum effort, large ones the fastest level
+    private static final int MEDIUM_SIZE = 64 * 1024;
+    private static final int LARGE_SIZE = 1024 * 1024;
+
+    private static final List<String> EXCLUDED_PATHS = Arrays.asList(
+            "/download/**",
+            "/download-range/**",
+            "/selfDownload",
+            "/upload/**",
+            "/file/events/**",
+            "/file/extract/**");
+
+    private static final List<String> COMPRESSIBLE_TYPES = Arrays.asList(
+            "text/html",
+            "text/plain",
+            "text/css",
+            "text/javascript",
+            "text/xml",
+            "application/json",
+            "application/javascript",
+            "application/xml",
+            "application/x-ndjson",
+            "image/svg+xml");
+
+    // Carries the wrapper of an async request over to its completing dispatch
+    private static final String RESPONSE_ATTRIBUTE = CompressionFilter.class.getName() + ".response";
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if ("HEAD".equals(request.getMethod()) || request.getHeader("Range") != null) {
+            return true;
+        }
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null || !acceptsGzip(acceptEncoding)) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String pattern : EXCLUDED_PATHS) {
+            if (pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        CompressingResponse wrapper = (CompressingResponse) request.getAttribute(RESPONSE_ATTRIBUTE);
+        if (wrapper == null) {
+            response.addHeader("Vary", "Accept-Encoding");
+            wrapper = new CompressingResponse(request, response);
+        }
+        chain.doFilter(request, wrapper);
+        if (request.isAsyncStarted()) {
+            // The body is still being written; finish on the async dispatch
+            request.setAttribute(RESPONSE_ATTRIBUTE, wrapper);
+            return;
+        }
+        request.removeAttribute(RESPONSE_ATTRIBUTE);
+        wrapper.finish();
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+            if (coding.equals("gzip") || coding.equals("*")) {
+                return tokens.length < 2 || !tokens[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    static int levelFor(long size) {
+        if (size >= 0 && size < MEDIUM_SIZE) {
+            return Deflater.BEST_COMPRESSION;
+        }
+        if (size >= LARGE_SIZE) {
+            return Deflater.BEST_SPEED;
+        }
+        return Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /**
+     * Holds back the first MIN_SIZE bytes so small responses can skip gzip,
+     * and strips Content-Length once the body is compressed
+     */
+    private static class CompressingResponse extends HttpServletResponseWrapper {
+        private final HttpServletRequest request;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private long declaredLength = -1;
+        private boolean decided;
+        // Set when the application switches to non-blocking writes, which gzip cannot follow
+        private boolean passThrough;
+        private OutputStream target;
+        private LevelGzipStream gzip;
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+
+        CompressingResponse(HttpServletRequest request, HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (decided && gzip == null) {
+                super.setContentLengthLong(len);
+            } else {
+                declaredLength = len;
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            if (stream == null) {
+                stream = new BufferingStream();
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (stream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                stream = new BufferingStream();
+                writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (decided) {
+                target.flush();
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (!decided) {
+                pending.reset();
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            if (!decided) {
+                pending.reset();
+                declaredLength = -1;
+            }
+        }
+
+        /**
+         * Pick gzip or pass-through once the content type and size are known
+         */
+        private void decide(long size) throws IOException {
+            decided = true;
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (!passThrough && shouldCompress(response, size)) {
+                response.setHeader("Content-Encoding", "gzip");
+                gzip = new LevelGzipStream(response.getOutputStream(), levelFor(size));
+                target = gzip;
+            } else {
+                if (declaredLength >= 0) {
+                    response.setContentLengthLong(declaredLength);
+                }
+                target = response.getOutputStream();
+            }
+            if (pending.size() > 0) {
+                target.write(pending.toByteArray());
+            }
+        }
+
+        private boolean shouldCompress(HttpServletResponse response, long size) {
+            if (size >= 0 && size < MIN_SIZE) {
+                return false;
+            }
+            if (response.getStatus() == HttpServletResponse.SC_PARTIAL_CONTENT
+                    || response.getHeader("Content-Range") != null
+                    || response.getHeader("Content-Encoding") != null) {
+                return false;
+            }
+            String contentType = response.getContentType();
+            if (contentType == null) {
+                return false;
+            }
+            String mimeType = contentType.split(";")[0].trim().toLowerCase(Locale.ROOT);
+            return COMPRESSIBLE_TYPES.contains(mimeType);
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (!decided) {
+                if (stream == null && declaredLength < 0) {
+                    return; // nothing written through us
+                }
+                decide(pending.size());
+            }
+            if (gzip != null) {
+                gzip.finish();
+            }
+        }
+
+        private class BufferingStream extends ServletOutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (!decided) {
+                    // A streamed body is not held back: its first lines should go out promptly
+                    if (declaredLength < 0 && pending.size() + len <= MIN_SIZE && !request.isAsyncStarted()) {
+                        pending.write(b, off, len);
+                        return;
+                    }
+                    decide(declaredLength);
+                }
+                target.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                // Before the decision a flush only reaches the holding buffer
+                if (decided) {
+                    target.flush();
+                }
+            }
+
+            @Override
+            public boolean isReady() {
+                if (decided && gzip == null) {
+                    try {
+                        return getResponse().getOutputStream().isReady();
+                    } catch (IOException e) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            /**
+             * Non-blocking output goes to the container stream uncompressed
+             */
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                if (!decided) {
+                    passThrough = true;
+                    try {
+                        decide(declaredLength);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                if (gzip != null) {
+                    throw new IllegalStateException("Response is already being compressed");
+                }
+                try {
+                    getResponse().getOutputStream().setWriteListener(writeListener);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gzip stream that drops to the fastest level once a body of unknown
+     * length grows past LARGE_SIZE
+     */
+    private static class LevelGzipStream extends GZIPOutputStream {
+        private long written;
+
+        LevelGzipStream(OutputStream out, int level) throws IOException {
+            super(out, 8192, true);
+            def.setLevel(level);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            written += len;
+            if (written > LARGE_SIZE) {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+            super.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.zab.ide.config;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Paces bulk transfers (downloads and uploads) so interactive requests keep
+ * their latency. Every slice of a transfer is charged to three token
+ * buckets: its endpoint class, its user (the client address), and a global
+ * bucket. Slices are granted in weighted fair order (lowest virtual time
+ * first), so concurrent transfers share the link instead of the first one
+ * taking it, and a user's parallel connections split that user's share.
+ * While interactive requests are in flight the global rate drops to
+ * INTERACTIVE_BULK_SHARE of its limit. The rates come from the
+ * zabide.transfer.* properties (see TransferShapingConfig).
+ */
+final class TransferScheduler {
+
+    static final String DOWNLOAD = "download";
+    static final String UPLOAD = "upload";
+
+    private static final double INTERACTIVE_BULK_SHARE = 0.5;
+    // Editor requests come in bursts; keep the bulk rate down briefly after one ends
+    private static final long INTERACTIVE_GRACE_NANOS = 250_000_000L;
+    private static final double BURST_SECONDS = 0.25;
+
+    // Rates in bytes per second; 0 disables that limit
+    private final long globalRate;
+    private final long perUserRate;
+    private final long downloadRate;
+    private final long uploadRate;
+
+    // All state is guarded by this
+    private final TokenBucket global;
+    private final TokenBucket downloadBucket;
+    private final TokenBucket uploadBucket;
+    private final Map<String, TokenBucket> userBuckets = new HashMap<>();
+    private final Map<String, Integer> userTransfers = new HashMap<>();
+    private final List<Transfer> waiting = new ArrayList<>();
+    private double virtualNow;
+
+    private int interactiveActive;
+    private long interactiveEnded;
+
+    TransferScheduler(long globalRate, long perUserRate, long downloadRate, long uploadRate) {
+        this.globalRate = globalRate;
+        this.perUserRate = perUserRate;
+        this.downloadRate = downloadRate;
+        this.uploadRate = uploadRate;
+        this.global = new TokenBucket(globalRate);
+        this.downloadBucket = new TokenBucket(downloadRate);
+        this.uploadBucket = new TokenBucket(uploadRate);
+    }
+
+    synchronized Transfer open(String user, String endpointClass) {
+        userBuckets.computeIfAbsent(user, u -> new TokenBucket(perUserRate));
+        userTransfers.merge(user, 1, Integer::sum);
+        return new Transfer(user, endpointClass);
+    }
+
+    synchronized void close(Transfer transfer) {
+        Integer count = userTransfers.get(transfer.user);
+        if (count == null || count <= 1) {
+            // A returning user starts with a full bucket
+            userTransfers.remove(transfer.user);
+            userBuckets.remove(transfer.user);
+        } else {
+            userTransfers.put(transfer.user, count - 1);
+        }
+    }
+
+    synchronized void interactiveStarted() {
+        interactiveActive++;
+    }
+
+    synchronized void interactiveFinished() {
+        interactiveActive--;
+        interactiveEnded = System.nanoTime();
+    }
+
+    /**
+     * Block until the transfer may move the given number of bytes.
+     * Among waiting transfers whose class and user buckets have tokens, the
+     * one with the lowest virtual time goes next, so fairness holds whichever
+     * limit is the bottleneck and a capped user never blocks the others.
+     */
+    synchronized void acquire(Transfer transfer, int bytes) throws InterruptedIOException {
+        // A transfer that was idle does not get credit for the time it was away
+        transfer.virtualTime = Math.max(transfer.virtualTime, virtualNow);
+        waiting.add(transfer);
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                global.refill(now, globalRate(now));
+                downloadBucket.refill(now, downloadRate);
+                uploadBucket.refill(now, uploadRate);
+                for (TokenBucket bucket : userBuckets.values()) {
+                    bucket.refill(now, perUserRate);
+                }
+
+                if (global.hasTokens() && next() == transfer) {
+                    global.take(bytes);
+                    classBucket(transfer).take(bytes);
+                    TokenBucket userBucket = userBuckets.get(transfer.user);
+                    if (userBucket != null) {
+                        userBucket.take(bytes);
+                    }
+                    virtualNow = transfer.virtualTime;
+                    transfer.virtualTime += bytes / weight(transfer);
+                    return;
+                }
+                wait(millisUntilGrant(now));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Transfer interrupted");
+        } finally {
+            waiting.remove(transfer);
+            notifyAll();
+        }
+    }
+
+    private double globalRate(long now) {
+        boolean interactive = interactiveActive > 0 || now - interactiveEnded < INTERACTIVE_GRACE_NANOS;
+        return interactive ? globalRate * INTERACTIVE_BULK_SHARE : globalRate;
+    }
+
+    /**
+     * Time until some waiter can be granted: the global refill when that is
+     * the limit, otherwise the soonest refill of a waiter's own buckets
+     */
+    private long millisUntilGrant(long now) {
+        if (!global.hasTokens()) {
+            return global.millisUntilPositive(globalRate(now));
+        }
+        long soonest = Long.MAX_VALUE;
+        for (Transfer candidate : waiting) {
+            long millis = classBucket(candidate).millisUntilPositive(
+                    candidate.endpointClass.equals(UPLOAD) ? uploadRate : downloadRate);
+            TokenBucket userBucket = userBuckets.get(candidate.user);
+            if (userBucket != null) {
+                millis = Math.max(millis, userBucket.millisUntilPositive(perUserRate));
+            }
+            soonest = Math.min(soonest, millis);
+        }
+        return Math.max(1, soonest);
+    }
+
+    private TokenBucket classBucket(Transfer transfer) {
+        return transfer.endpointClass.equals(UPLOAD) ? uploadBucket : downloadBucket;
+    }
+
+    /**
+     * Lowest virtual time among the waiters not held back by their own limits
+     */
+    private Transfer next() {
+        Transfer next = null;
+        for (Transfer candidate : waiting) {
+            TokenBucket userBucket = userBuckets.get(candidate.user);
+            boolean eligible = classBucket(candidate).hasTokens() && (userBucket == null || userBucket.hasTokens());
+            if (eligible && (next == null || candidate.virtualTime < next.virtualTime)) {
+                next = candidate;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Users share equally; a user's parallel transfers split that share
+     */
+    private double weight(Transfer transfer) {
+        Integer count = userTransfers.get(transfer.user);
+        return 1.0 / Math.max(1, count != null ? count : 1);
+    }
+
+    static final class Transfer {
+        final String user;
+        final String endpointClass;
+        double virtualTime;
+
+        Transfer(String user, String endpointClass) {
+            this.user = user;
+            this.endpointClass = endpointClass;
+        }
+    }
+
+    /**
+     * Token bucket that may go into debt, so a slice larger than the burst
+     * size still passes; the debt is paid back before the next grant.
+     * A rate of 0 means unlimited.
+     */
+    private static final class TokenBucket {
+        private final long limit;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(long rate) {
+            this.limit = rate;
+            this.tokens = rate * BURST_SECONDS;
+        }
+
+        void refill(long now, double rate) {
+            tokens = Math.min(rate * BURST_SECONDS, tokens + (now - lastRefill) * rate / 1e9);
+            lastRefill = now;
+        }
+
+        boolean hasTokens() {
+            return limit <= 0 || tokens > 0;
+        }
+
+        void take(int bytes) {
+            if (limit > 0) {
+                tokens -= bytes;
+            }
+        }
+
+        long millisUntilPositive(double rate) {
+            return limit <= 0 || tokens > 0 ? 1 : Math.max(1, (long) Math.ceil(-tokens * 1000 / rate));
+        }
+    }
+}
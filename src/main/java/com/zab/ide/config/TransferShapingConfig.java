@@ -0,0 +1,31 @@
+package com.zab.ide.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+@Configuration
+public class TransferShapingConfig {
+
+    /**
+     * Rates are given in KB per second in application.properties; 0 turns a
+     * limit off
+     */
+    @Bean
+    public FilterRegistrationBean<TransferShapingFilter> transferShapingFilter(
+            @Value("${zabide.transfer.global-rate-kb:0}") long globalRateKb,
+            @Value("${zabide.transfer.per-user-rate-kb:0}") long perUserRateKb,
+            @Value("${zabide.transfer.download-rate-kb:0}") long downloadRateKb,
+            @Value("${zabide.transfer.upload-rate-kb:0}") long uploadRateKb) {
+        TransferScheduler scheduler = new TransferScheduler(globalRateKb * 1024, perUserRateKb * 1024,
+                downloadRateKb * 1024, uploadRateKb * 1024);
+        FilterRegistrationBean<TransferShapingFilter> registration = new FilterRegistrationBean<>(
+                new TransferShapingFilter(scheduler));
+        registration.addUrlPatterns("/*");
+        // Outermost, so it paces the bytes that actually go over the wire
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 5);
+        return registration;
+    }
+}
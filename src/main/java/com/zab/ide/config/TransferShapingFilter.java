@@ -0,0 +1,249 @@
+package com.zab.ide.config;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rate-limits bulk transfers through TransferScheduler and marks every
+ * other request as interactive, which lowers the bulk rate while it runs.
+ * Download bodies are paced as they are written, upload bodies as they
+ * are read. Event streams, progress polling and static assets are neither
+ * shaped nor counted as interactive.
+ */
+public class TransferShapingFilter extends OncePerRequestFilter {
+
+    // Bytes charged per scheduler call; small enough to interleave transfers
+    private static final int SLICE = 64 * 1024;
+    // Single-byte reads and writes are charged in batches of this size
+    private static final int BYTE_BATCH = 4 * 1024;
+
+    private static final List<String> DOWNLOAD_PATHS = Arrays.asList(
+            "/download/**",
+            "/download-range/**",
+            "/selfDownload");
+
+    // POST bodies: whole-file and multipart chunk uploads. The container
+    // parses multipart bodies itself, so these count as bulk (they do not
+    // lower the bulk rate) but only raw PUT bodies are actually paced.
+    private static final List<String> UPLOAD_PATHS = Arrays.asList(
+            "/upload",
+            "/upload/chunk");
+    // PUT bodies: raw chunk uploads
+    private static final String RAW_UPLOAD_PATH = "/upload/*";
+
+    // Long-lived streams, upload polling and page assets: a browser tab keeps
+    // these going during a transfer, so they must not slow it down
+    private static final List<String> PASSIVE_PATHS = Arrays.asList(
+            "/file/events/**",
+            "/upload/progress/**",
+            "/upload/status/**",
+            "/",
+            "/webjars/**",
+            "/**/*.html",
+            "/**/*.js",
+            "/**/*.css",
+            "/**/*.map",
+            "/**/*.ico",
+            "/**/*.png",
+            "/**/*.jpg",
+            "/**/*.gif",
+            "/**/*.svg",
+            "/**/*.woff",
+            "/**/*.woff2",
+            "/**/*.ttf");
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final TransferScheduler scheduler;
+
+    TransferShapingFilter(TransferScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+
+        String endpointClass = null;
+        if (matches(DOWNLOAD_PATHS, path)) {
+            endpointClass = TransferScheduler.DOWNLOAD;
+        } else if (("POST".equals(request.getMethod()) && matches(UPLOAD_PATHS, path))
+                || ("PUT".equals(request.getMethod()) && pathMatcher.match(RAW_UPLOAD_PATH, path))) {
+            endpointClass = TransferScheduler.UPLOAD;
+        }
+
+        if (endpointClass == null) {
+            if (matches(PASSIVE_PATHS, path)) {
+                chain.doFilter(request, response);
+                return;
+            }
+            scheduler.interactiveStarted();
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                scheduler.interactiveFinished();
+            }
+            return;
+        }
+
+        TransferScheduler.Transfer transfer = scheduler.open(client(request), endpointClass);
+        try {
+            if (endpointClass.equals(TransferScheduler.UPLOAD)) {
+                chain.doFilter(new ShapedRequest(request, transfer), response);
+            } else {
+                chain.doFilter(request, new ShapedResponse(response, transfer));
+            }
+        } finally {
+            scheduler.close(transfer);
+        }
+    }
+
+    private boolean matches(List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Client address used to group transfers. The filter runs before
+     * authentication, so a user name from the Authorization header could
+     * be anything and is not trusted here.
+     */
+    private String client(HttpServletRequest request) {
+        return "addr:" + request.getRemoteAddr();
+    }
+
+    private class ShapedRequest extends HttpServletRequestWrapper {
+        private final TransferScheduler.Transfer transfer;
+        private ServletInputStream stream;
+
+        ShapedRequest(HttpServletRequest request, TransferScheduler.Transfer transfer) {
+            super(request);
+            this.transfer = transfer;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (stream == null) {
+                ServletInputStream delegate = super.getInputStream();
+                stream = new ServletInputStream() {
+                    private int unpaid;
+
+                    @Override
+                    public int read() throws IOException {
+                        int b = delegate.read();
+                        if (b >= 0 && ++unpaid >= BYTE_BATCH) {
+                            scheduler.acquire(transfer, unpaid);
+                            unpaid = 0;
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        // Pay after reading, so the request is never stalled on an empty buffer
+                        int read = delegate.read(b, off, Math.min(len, SLICE));
+                        if (read > 0) {
+                            scheduler.acquire(transfer, read);
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return delegate.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener listener) {
+                        delegate.setReadListener(listener);
+                    }
+                };
+            }
+            return stream;
+        }
+    }
+
+    private class ShapedResponse extends HttpServletResponseWrapper {
+        private final TransferScheduler.Transfer transfer;
+        private ServletOutputStream stream;
+
+        ShapedResponse(HttpServletResponse response, TransferScheduler.Transfer transfer) {
+            super(response);
+            this.transfer = transfer;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (stream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                stream = new ServletOutputStream() {
+                    private int unpaid;
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        if (++unpaid >= BYTE_BATCH) {
+                            scheduler.acquire(transfer, unpaid);
+                            unpaid = 0;
+                        }
+                        delegate.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        while (len > 0) {
+                            int slice = Math.min(len, SLICE);
+                            scheduler.acquire(transfer, slice);
+                            delegate.write(b, off, slice);
+                            off += slice;
+                            len -= slice;
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        delegate.setWriteListener(listener);
+                    }
+                };
+            }
+            return stream;
+        }
+    }
+}
@@ -1,7 +1,18 @@
 package com.zab.ide.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zab.ide.service.DirectorySizeService.DirSize;
+import com.zab.ide.service.FileBatchService;
+import com.zab.ide.service.FileBatchService.BatchRequest;
+import com.zab.ide.service.FileJobService;
+import com.zab.ide.service.FileWatchService;
 import com.zab.ide.service.FileManagementService;
+import com.zab.ide.service.FileManagementService.ExtractProgress;
+import com.zab.ide.service.FileManagementService.FileContent;
 import com.zab.ide.service.FileManagementService.FileNode;
+import com.zab.ide.service.FileManagementService.FilePatch;
+import com.zab.ide.service.FileManagementService.FilePage;
+import com.zab.ide.service.LargeFileService;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -10,9 +21,13 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +43,21 @@ public class FileController {
     @Autowired
     private FileManagementService fileService;
 
+    @Autowired
+    private LargeFileService largeFileService;
+
+    @Autowired
+    private FileBatchService fileBatchService;
+
+    @Autowired
+    private FileJobService fileJobService;
+
+    @Autowired
+    private FileWatchService fileWatchService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * List files and folders in a directory
      * GET /file/list?path=path/to/folder
@@ -48,6 +78,33 @@ public class FileController {
         }
     }
 
+    /**
+     * List one page of a directory (for lazy loading large folders)
+     * GET /file/list-page?path=path/to/folder&cursor=f/name.txt&limit=500
+     */
+    @GetMapping("/list-page")
+    public ResponseEntity<?> listPage(
+            @RequestParam(defaultValue = "") String path,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "500") int limit) {
+        try {
+            FilePage page = fileService.listPage(path, cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
     /**
      * Get directory tree recursively
      * GET /file/tree?path=path/to/folder&depth=3
@@ -70,6 +127,58 @@ public class FileController {
         }
     }
 
+    /**
+     * Get recursive folder size and file count
+     * GET /file/du?path=path/to/folder
+     */
+    @GetMapping("/du")
+    public ResponseEntity<?> directorySize(@RequestParam(defaultValue = "") String path) {
+        try {
+            DirSize size = fileService.getDirectorySize(path);
+            return ResponseEntity.ok(size);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    /**
+     * Stream sizes of every subfolder, largest first, one JSON object per line
+     * GET /file/du/report?path=path/to/folder&limit=1000
+     */
+    @GetMapping("/du/report")
+    public ResponseEntity<?> directorySizeReport(
+            @RequestParam(defaultValue = "") String path,
+            @RequestParam(defaultValue = "0") int limit) {
+        try {
+            List<DirSize> report = fileService.getSizeReport(path);
+            int count = limit > 0 ? Math.min(limit, report.size()) : report.size();
+
+            StreamingResponseBody body = out -> {
+                for (int i = 0; i < count; i++) {
+                    out.write(objectMapper.writeValueAsBytes(report.get(i)));
+                    out.write('\n');
+                }
+            };
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                    .body(body);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
     /**
      * Read file content
      * GET /file/read?path=path/to/file.txt
@@ -77,10 +186,16 @@ public class FileController {
     @GetMapping("/read")
     public ResponseEntity<?> readFile(@RequestParam String path) {
         try {
-            String content = fileService.readFileContent(path);
-            Map<String, String> response = new HashMap<String, String>();
+            FileContent file = fileService.readFileWithVersion(path);
+            Map<String, Object> response = new HashMap<String, Object>();
             response.put("path", path);
-            response.put("content", content);
+            response.put("contentType", file.contentType);
+            response.put("size", file.size);
+            response.put("binary", file.binary);
+            if (!file.binary) {
+                response.put("content", file.content);
+                response.put("version", file.version);
+            }
             return ResponseEntity.ok(response);
         } catch (SecurityException e) {
             Map<String, String> error = new HashMap<String, String>();
@@ -93,6 +208,59 @@ public class FileController {
         }
     }
 
+    /**
+     * Read a window of lines from a (possibly very large) file
+     * GET /file/read-range?path=path/to/file.sql&start=0&count=200
+     */
+    @GetMapping("/read-range")
+    public ResponseEntity<?> readRange(
+            @RequestParam String path,
+            @RequestParam(defaultValue = "0") long start,
+            @RequestParam(defaultValue = "500") int count) {
+        try {
+            Map<String, Object> window = largeFileService.readLines(path, start, count);
+            return ResponseEntity.ok(window);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    /**
+     * Read a window of bytes from any file, as hex rows or raw bytes
+     * GET /file/hex?path=WEB-INF/classes/Foo.class&offset=0&length=4096&format=json
+     */
+    @GetMapping("/hex")
+    public ResponseEntity<?> readHex(
+            @RequestParam String path,
+            @RequestParam(defaultValue = "0") long offset,
+            @RequestParam(defaultValue = "4096") int length,
+            @RequestParam(defaultValue = "json") String format) {
+        try {
+            if ("raw".equals(format)) {
+                byte[] bytes = largeFileService.readBytes(path, offset, length);
+                return ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .header("X-Content-Type-Sniffed", largeFileService.sniffContentType(path))
+                        .body(bytes);
+            }
+            return ResponseEntity.ok(largeFileService.readHex(path, offset, length));
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
     /**
      * Write/override file content
      * POST /file/write
@@ -132,6 +300,95 @@ public class FileController {
         }
     }
 
+    /**
+     * Apply a patch to a file and replace it atomically
+     * POST /file/patch
+     * Body: { "path": "path/to/file.jsp", "baseVersion": "sha256...",
+     *         "edits": [ { "offset": 120, "deleteCount": 5, "text": "new" } ] }
+     */
+    @PostMapping("/patch")
+    public ResponseEntity<?> patchFile(@RequestBody FilePatch patch) {
+        if (patch.path == null || patch.baseVersion == null) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", "Missing 'path' or 'baseVersion' in request");
+            return ResponseEntity.badRequest().body(error);
+        }
+        try {
+            String version = fileService.applyPatch(patch);
+            Map<String, Object> response = new HashMap<String, Object>();
+            response.put("success", true);
+            response.put("message", "File patched successfully");
+            response.put("path", patch.path);
+            response.put("version", version);
+            return ResponseEntity.ok(response);
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        } catch (IndexOutOfBoundsException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(error);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    /**
+     * Upload a ZIP as the raw request body and extract it into a folder
+     * POST /file/extract?path=path/to/folder&parallel=true&extractId=abc
+     * Body: the ZIP bytes (application/zip or application/octet-stream)
+     */
+    @PostMapping("/extract")
+    public ResponseEntity<?> extractZip(
+            @RequestParam(defaultValue = "") String path,
+            @RequestParam(defaultValue = "true") boolean parallel,
+            @RequestParam(required = false) String extractId,
+            HttpServletRequest request) {
+        try {
+            ExtractProgress progress = fileService.extractZip(path, request.getInputStream(), extractId, parallel);
+            Map<String, Object> response = new HashMap<String, Object>();
+            response.put("success", true);
+            response.put("message", "ZIP extracted successfully");
+            response.put("path", path);
+            response.put("progress", progress);
+            return ResponseEntity.ok(response);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    /**
+     * Get progress of a ZIP extraction
+     * GET /file/extract/progress/{extractId}
+     */
+    @GetMapping("/extract/progress/{extractId}")
+    public ResponseEntity<?> getExtractProgress(@PathVariable String extractId) {
+        ExtractProgress progress = fileService.getExtractProgress(extractId);
+        if (progress == null) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", "Extraction not found: " + extractId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+        return ResponseEntity.ok(progress);
+    }
+
     /**
      * Create a new file
      * POST /file/create-file
@@ -257,6 +514,164 @@ public class FileController {
         }
     }
 
+    /**
+     * Run several file operations in one request
+     * POST /file/batch
+     * Body: { "rollbackOnFailure": true, "operations": [
+     *         { "op": "createFolder", "path": "a" },
+     *         { "op": "rename", "path": "b.txt", "newPath": "a/b.txt" },
+     *         { "op": "delete", "path": "old" } ] }
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> batch(@RequestBody BatchRequest request) {
+        try {
+            Map<String, Object> result = fileBatchService.execute(request);
+            return ResponseEntity.ok(result);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    /**
+     * Start a background copy, duplicate, move or delete job
+     * POST /file/jobs
+     * Body: { "type": "copy", "path": "modules/a", "target": "modules/b" }
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<?> startJob(@RequestBody Map<String, String> request) {
+        try {
+            String type = request.get("type");
+            String path = request.get("path");
+
+            if (type == null || path == null) {
+                Map<String, String> error = new HashMap<String, String>();
+                error.put("error", "Missing 'type' or 'path' in request");
+                return ResponseEntity.badRequest().body(error);
+            }
+
+            String jobId = fileJobService.startJob(type, path, request.get("target"));
+            Map<String, Object> response = new HashMap<String, Object>();
+            response.put("success", true);
+            response.put("jobId", jobId);
+            return ResponseEntity.ok(response);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    /**
+     * List background jobs
+     * GET /file/jobs
+     */
+    @GetMapping("/jobs")
+    public ResponseEntity<?> listJobs() {
+        return ResponseEntity.ok(fileJobService.listJobs());
+    }
+
+    /**
+     * Get background job progress
+     * GET /file/jobs/{jobId}
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getJob(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(fileJobService.getJob(jobId));
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+    }
+
+    /**
+     * Cancel a background job
+     * POST /file/jobs/{jobId}/cancel
+     */
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ResponseEntity<?> cancelJob(@PathVariable String jobId) {
+        boolean cancelled = fileJobService.cancelJob(jobId);
+        Map<String, Object> response = new HashMap<String, Object>();
+        response.put("success", cancelled);
+        response.put("message", cancelled ? "Cancellation requested" : "Job not running");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Server-Sent Events stream of file changes in the given folders
+     * GET /file/events?path=folder/a&path=folder/b
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> events(@RequestParam(required = false) List<String> path) {
+        try {
+            List<String> paths = path != null ? path : Collections.singletonList("");
+            SseEmitter emitter = fileWatchService.connect(paths);
+            return ResponseEntity.ok(emitter);
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Subscribe an open event stream to another folder
+     * POST /file/events/subscribe
+     * Body: { "clientId": "...", "path": "path/to/folder" }
+     */
+    @PostMapping("/events/subscribe")
+    public ResponseEntity<?> subscribeEvents(@RequestBody Map<String, String> request) {
+        return changeSubscription(request, true);
+    }
+
+    /**
+     * Stop receiving events for a folder
+     * POST /file/events/unsubscribe
+     * Body: { "clientId": "...", "path": "path/to/folder" }
+     */
+    @PostMapping("/events/unsubscribe")
+    public ResponseEntity<?> unsubscribeEvents(@RequestBody Map<String, String> request) {
+        return changeSubscription(request, false);
+    }
+
+    private ResponseEntity<?> changeSubscription(Map<String, String> request, boolean subscribe) {
+        try {
+            String clientId = request.get("clientId");
+            String path = request.get("path");
+
+            if (clientId == null || path == null) {
+                Map<String, String> error = new HashMap<String, String>();
+                error.put("error", "Missing 'clientId' or 'path' in request");
+                return ResponseEntity.badRequest().body(error);
+            }
+
+            if (subscribe) {
+                fileWatchService.subscribe(clientId, path);
+            } else {
+                fileWatchService.unsubscribe(clientId, path);
+            }
+            Map<String, Object> response = new HashMap<String, Object>();
+            response.put("success", true);
+            response.put("path", path);
+            return ResponseEntity.ok(response);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
     /**
      * Check if path exists
      * GET /file/exists?path=path/to/check
@@ -0,0 +1,130 @@
+package com.zab.ide.controller;
+
+import com.zab.ide.service.FileHistoryService;
+import com.zab.ide.service.FileHistoryService.FileVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/file/history")
+public class HistoryController {
+
+    @Autowired
+    private FileHistoryService fileHistoryService;
+
+    /**
+     * List stored versions of a file, newest first
+     * GET /file/history?path=path/to/file.jsp
+     */
+    @GetMapping
+    public ResponseEntity<?> listVersions(@RequestParam String path) {
+        try {
+            List<FileVersion> versions = fileHistoryService.listVersions(path);
+
+            Map<String, Object> response = new HashMap<String, Object>();
+            response.put("path", path);
+            response.put("versions", versions);
+            response.put("count", versions.size());
+            return ResponseEntity.ok(response);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    /**
+     * Raw content of a stored version
+     * GET /file/history/content?path=path/to/file.jsp&version=12
+     */
+    @GetMapping("/content")
+    public ResponseEntity<?> getVersionContent(@RequestParam String path, @RequestParam long version) {
+        try {
+            byte[] content = fileHistoryService.readVersion(path, version);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(content);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+    }
+
+    /**
+     * Unified diff of a stored version against the current file or another version
+     * GET /file/history/diff?path=path/to/file.jsp&version=12&against=15
+     */
+    @GetMapping("/diff")
+    public ResponseEntity<?> diffVersion(
+            @RequestParam String path,
+            @RequestParam long version,
+            @RequestParam(required = false) Long against) {
+        try {
+            return ResponseEntity.ok(fileHistoryService.diff(path, version, against));
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+    }
+
+    /**
+     * Restore a stored version (the current content is kept as a new version)
+     * POST /file/history/restore
+     * Body: { "path": "path/to/file.jsp", "version": "12" }
+     */
+    @PostMapping("/restore")
+    public ResponseEntity<?> restoreVersion(@RequestBody Map<String, String> request) {
+        String path = request.get("path");
+        String version = request.get("version");
+
+        if (path == null || version == null) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", "Missing 'path' or 'version' in request");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        try {
+            FileVersion restored = fileHistoryService.restore(path, Long.parseLong(version));
+
+            Map<String, Object> response = new HashMap<String, Object>();
+            response.put("success", true);
+            response.put("message", "Version restored");
+            response.put("version", restored);
+            return ResponseEntity.ok(response);
+        } catch (NumberFormatException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", "Invalid version: " + version);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.zab.ide.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zab.ide.service.ManifestService;
+import com.zab.ide.service.ManifestService.ManifestEntry;
+import com.zab.ide.service.SyncService;
+import com.zab.ide.service.SyncService.SyncPlan;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/file/manifest")
+public class ManifestController {
+
+    @Autowired
+    private ManifestService manifestService;
+
+    @Autowired
+    private SyncService syncService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Stream the SHA-256 manifest of a folder, one JSON object per line
+     * GET /file/manifest?path=path/to/folder
+     */
+    @GetMapping
+    public ResponseEntity<?> getManifest(@RequestParam(defaultValue = "") String path) {
+        try {
+            List<ManifestEntry> manifest = manifestService.buildManifest(path);
+
+            StreamingResponseBody body = out -> {
+                for (ManifestEntry entry : manifest) {
+                    out.write(objectMapper.writeValueAsBytes(entry));
+                    out.write('\n');
+                }
+            };
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                    .body(body);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    /**
+     * Compare a folder with a manifest from another server.
+     * The body is either a JSON array or the NDJSON stream returned by GET /file/manifest.
+     * POST /file/manifest/diff?path=path/to/folder
+     */
+    @PostMapping("/diff")
+    public ResponseEntity<?> diffManifest(
+            @RequestParam(defaultValue = "") String path,
+            HttpServletRequest request) {
+        try {
+            List<ManifestEntry> other = readManifest(request);
+            return ResponseEntity.ok(manifestService.diff(path, other));
+        } catch (JsonProcessingException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", "Invalid manifest: " + e.getOriginalMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    /**
+     * Start a delta sync: post the client's manifest, get back the files to upload
+     * and the files the server will delete
+     * POST /file/manifest/sync?path=path/to/folder
+     */
+    @PostMapping("/sync")
+    public ResponseEntity<?> planSync(
+            @RequestParam(defaultValue = "") String path,
+            HttpServletRequest request) {
+        try {
+            SyncPlan plan = syncService.plan(path, readManifest(request));
+            return ResponseEntity.ok(plan);
+        } catch (JsonProcessingException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", "Invalid manifest: " + e.getOriginalMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+    }
+
+    /**
+     * Finish a delta sync: the body is a ZIP of the planned files, named by
+     * their manifest paths. Applied only if every file arrives with the right hash.
+     * POST /file/manifest/sync/{syncId}
+     */
+    @PostMapping("/sync/{syncId}")
+    public ResponseEntity<?> applySync(@PathVariable String syncId, HttpServletRequest request) {
+        try {
+            return ResponseEntity.ok(syncService.apply(syncId, request.getInputStream()));
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        }
+    }
+
+    private List<ManifestEntry> readManifest(HttpServletRequest request) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        int first;
+        do {
+            reader.mark(1);
+            first = reader.read();
+        } while (first != -1 && Character.isWhitespace(first));
+        reader.reset();
+
+        if (first == '[') {
+            return objectMapper.readValue(reader, new TypeReference<List<ManifestEntry>>() {});
+        }
+
+        List<ManifestEntry> entries = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+                entries.add(objectMapper.readValue(line, ManifestEntry.class));
+            }
+        }
+        return entries;
+    }
+}
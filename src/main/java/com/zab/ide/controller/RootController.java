@@ -5,15 +5,23 @@ import java.util.List;
 import java.util.Map;
 
 import com.zab.ide.model.UploadProgress;
+import com.zab.ide.service.FileCatalogService;
 import com.zab.ide.service.FileService;
 import com.zab.ide.service.RestartService;
+import com.zab.ide.service.UploadProgressService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.security.Principal;
 
 @RestController
 public class RootController {
@@ -24,16 +32,36 @@ public class RootController {
     @Autowired
     private RestartService restartService;
 
+    @Autowired
+    private UploadProgressService uploadProgressService;
+
+    @Autowired
+    private FileCatalogService fileCatalogService;
+
     // @GetMapping("")
     // public String root() {
     // return "index.html";
     // }
 
-    /** List files */
+    /**
+     * List completed files with size, digest, upload time and download count,
+     * one page at a time from the in-memory catalog
+     */
     @GetMapping("/allFiles")
     // @ResponseBody
-    public List<String> getFiles() throws IOException {
-        return fileService.listFiles();
+    public ResponseEntity<?> getFiles(
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String order,
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(fileCatalogService.list(sort, order, prefix, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
     }
 
     /** Download file */
@@ -56,25 +84,116 @@ public class RootController {
         return ResponseEntity.ok("Uploaded: " + file.getOriginalFilename());
     }
 
+    /** 507 when the upload would not fit in the temp quota or on the disk */
     @PostMapping("/upload/start")
     // @ResponseBody
-    public String startUpload(@RequestParam String fileName,
-            @RequestParam long totalSize) {
-        return fileService.startUpload(fileName, totalSize);
+    public ResponseEntity<?> startUpload(@RequestParam String fileName,
+            @RequestParam long totalSize,
+            @RequestParam(required = false) Long chunkSize) throws IOException {
+        try {
+            return ResponseEntity.ok(fileService.startUpload(fileName, totalSize, chunkSize));
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(error);
+        }
     }
 
+    /**
+     * Chunks may carry an index or byte offset and be sent in parallel.
+     * A checksum ("sha256:<hex>" or "crc32:<hex>", as a parameter or the
+     * X-Chunk-Checksum header) is verified while streaming; a mismatch
+     * answers 422 and the chunk can simply be sent again.
+     */
     @PostMapping("/upload/chunk")
     public ResponseEntity<?> uploadChunk(@RequestParam("uploadId") String uploadId,
-            @RequestParam("chunk") MultipartFile chunk) throws IOException {
-        fileService.uploadChunk(uploadId, chunk);
-        return ResponseEntity.ok().build();
+            @RequestParam("chunk") MultipartFile chunk,
+            @RequestParam(required = false) Long offset,
+            @RequestParam(required = false) Integer index,
+            @RequestParam(required = false) String checksum,
+            @RequestHeader(value = "X-Chunk-Checksum", required = false) String checksumHeader)
+            throws IOException {
+        try {
+            fileService.uploadChunk(uploadId, chunk, offset, index, checksum != null ? checksum : checksumHeader);
+            return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(error);
+        }
+    }
+
+    /**
+     * Raw chunk upload: the request body (application/octet-stream) is the
+     * chunk, positioned by X-Upload-Offset or X-Chunk-Index. It skips
+     * multipart parsing, so large chunks are not spooled to disk twice.
+     */
+    @PutMapping("/upload/{uploadId}")
+    public ResponseEntity<?> uploadRaw(@PathVariable String uploadId,
+            @RequestHeader(value = "X-Upload-Offset", required = false) Long offset,
+            @RequestHeader(value = "X-Chunk-Index", required = false) Integer index,
+            @RequestHeader(value = "X-Chunk-Checksum", required = false) String checksum,
+            HttpServletRequest request) throws IOException {
+        try {
+            fileService.uploadRaw(uploadId, request.getInputStream(), request.getContentLengthLong(),
+                    offset, index, checksum);
+            return ResponseEntity.ok().build();
+        } catch (FileNotFoundException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(error);
+        }
     }
 
+    /** Received/missing ranges, so a client can resume after a disconnect */
+    @GetMapping("/upload/status/{uploadId}")
+    public ResponseEntity<?> getUploadStatus(@PathVariable String uploadId) throws IOException {
+        try {
+            return ResponseEntity.ok(fileService.getUploadStatus(uploadId));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * The SHA-256 computed during the upload is returned in X-Content-SHA256;
+     * an optional sha256 parameter is checked against it (422 on mismatch,
+     * as is finishing before every byte has arrived)
+     */
     @PostMapping("/upload/finish")
     public ResponseEntity<?> finishUpload(@RequestParam String uploadId,
-            @RequestParam String fileName) throws IOException {
-        fileService.finishUpload(uploadId, fileName);
-        return ResponseEntity.ok("Completed");
+            @RequestParam String fileName,
+            @RequestParam(required = false) String sha256) throws IOException {
+        try {
+            String digest = fileService.finishUpload(uploadId, fileName, sha256);
+            return ResponseEntity.ok()
+                    .header("X-Content-SHA256", digest)
+                    .body("Completed");
+        } catch (FileNotFoundException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(error);
+        }
     }
 
     @GetMapping("/upload/progress/{uploadId}")
@@ -83,18 +202,94 @@ public class RootController {
         return fileService.getProgress(uploadId);
     }
 
+    /**
+     * One Server-Sent Events stream for any number of uploads, with
+     * throughput and ETA; replaces per-upload polling. Watching every upload
+     * (no uploadId) needs a signed-in user.
+     */
+    @GetMapping(value = "/upload/progress/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> progressEvents(@RequestParam(required = false) List<String> uploadId,
+            Principal principal, HttpServletRequest request) {
+        if ((uploadId == null || uploadId.isEmpty()) && principal == null) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", "uploadId is required");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+        try {
+            SseEmitter emitter = uploadProgressService.connect(uploadId, request.getRemoteAddr());
+            return ResponseEntity.ok(emitter);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error);
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /** Add an upload started later to an open progress stream */
+    @PostMapping("/upload/progress/events/subscribe")
+    public ResponseEntity<?> subscribeProgress(@RequestParam String clientId,
+            @RequestParam String uploadId) {
+        try {
+            uploadProgressService.subscribe(clientId, uploadId);
+            return ResponseEntity.ok().build();
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+    }
+
     @PostMapping("/upload/cancel")
     public ResponseEntity<?> cancelUpload(@RequestParam String uploadId) throws IOException {
         fileService.cancelUpload(uploadId);
         return ResponseEntity.ok().build();
     }
 
+    /** Delete a completed upload */
+    @DeleteMapping("/upload/completed/{filename}")
+    public ResponseEntity<?> deleteFile(@PathVariable String filename) throws IOException {
+        try {
+            fileService.deleteFile(filename);
+            return ResponseEntity.ok().build();
+        } catch (FileNotFoundException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+    }
+
+    /**
+     * Segment hashes of a completed upload, for parallel verified downloads
+     * through download-range
+     */
+    @GetMapping("/download-manifest/{filename}")
+    public ResponseEntity<?> getSegmentManifest(@PathVariable String filename) throws IOException {
+        try {
+            return ResponseEntity.ok(fileService.getSegmentManifest(filename));
+        } catch (FileNotFoundException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+    }
+
+    /**
+     * Ranged download: one or several byte ranges (multipart/byteranges),
+     * If-Range aware, streamed from the file without buffering
+     */
     @GetMapping("/download-range/{filename}")
-    public ResponseEntity<Resource> downloadRange(
+    public void downloadRange(
             @PathVariable String filename,
-            @RequestHeader HttpHeaders headers) throws IOException {
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
-        return fileService.downloadRange(filename, headers);
+        fileService.downloadRange(filename, request, response);
     }
 
     /**
@@ -145,4 +340,4 @@ public class RootController {
         // "timestamp", System.currentTimeMillis()));
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,73 @@
+package com.zab.ide.controller;
+
+import com.zab.ide.service.SymbolIndexService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/file/symbols")
+public class SymbolController {
+
+    @Autowired
+    private SymbolIndexService symbolIndexService;
+
+    /**
+     * Find where a symbol is defined
+     * GET /file/symbols/definition?name=loadCustomer
+     */
+    @GetMapping("/definition")
+    public ResponseEntity<?> findDefinition(@RequestParam String name) {
+        List<Map<String, Object>> results = symbolIndexService.findDefinitions(name);
+
+        Map<String, Object> response = new HashMap<String, Object>();
+        response.put("name", name);
+        response.put("results", results);
+        response.put("count", results.size());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Find lines that mention a symbol
+     * GET /file/symbols/references?name=loadCustomer&limit=200
+     */
+    @GetMapping("/references")
+    public ResponseEntity<?> findReferences(
+            @RequestParam String name,
+            @RequestParam(defaultValue = "200") int limit) {
+        List<Map<String, Object>> results = symbolIndexService.findReferences(name, limit);
+
+        Map<String, Object> response = new HashMap<String, Object>();
+        response.put("name", name);
+        response.put("results", results);
+        response.put("count", results.size());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Get indexer status
+     * GET /file/symbols/status
+     */
+    @GetMapping("/status")
+    public ResponseEntity<?> getStatus() {
+        return ResponseEntity.ok(symbolIndexService.getStatus());
+    }
+
+    /**
+     * Rebuild the index (after changes made outside the file manager)
+     * POST /file/symbols/reindex
+     */
+    @PostMapping("/reindex")
+    public ResponseEntity<?> reindex() {
+        symbolIndexService.requestReindex();
+
+        Map<String, Object> response = new HashMap<String, Object>();
+        response.put("success", true);
+        response.put("message", "Reindex started");
+        return ResponseEntity.ok(response);
+    }
+}
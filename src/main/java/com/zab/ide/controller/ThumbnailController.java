@@ -0,0 +1,60 @@
+package com.zab.ide.controller;
+
+import com.zab.ide.service.ThumbnailService;
+import com.zab.ide.service.ThumbnailService.Thumbnail;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("/file/thumbnail")
+public class ThumbnailController {
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    /**
+     * Scaled preview of an image (size is rounded up to 64, 128, 256 or 512)
+     * GET /file/thumbnail?path=images/logo.png&size=128
+     */
+    @GetMapping
+    public ResponseEntity<?> getThumbnail(
+            @RequestParam String path,
+            @RequestParam(defaultValue = "128") int size,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        try {
+            // Revalidate from the source attributes before decoding anything
+            String etag = thumbnailService.etag(path, size);
+            if (etag.equals(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+
+            Thumbnail thumbnail = thumbnailService.getThumbnail(path, size);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(thumbnail.contentType))
+                    .cacheControl(CacheControl.maxAge(1, TimeUnit.HOURS).cachePrivate())
+                    .eTag(thumbnailService.etag(thumbnail))
+                    .body(thumbnail.data);
+        } catch (SecurityException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error);
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(error);
+        }
+    }
+}
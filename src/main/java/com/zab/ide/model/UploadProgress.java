@@ -4,4 +4,6 @@ public class UploadProgress {
     public long totalBytes;
     public long uploadedBytes;
     public long startTime;
+    public long bytesPerSecond;
+    public long etaSeconds;
 }
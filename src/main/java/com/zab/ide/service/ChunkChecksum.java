@@ -0,0 +1,78 @@
+package com.zab.ide.service;
+
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Checksum a client sends with an upload chunk, as "sha256:&lt;hex&gt;" or
+ * "crc32:&lt;hex&gt;" (a bare hex value is taken by its length). The chunk
+ * bytes are fed in while they stream to disk, so checking adds no reread.
+ */
+final class ChunkChecksum {
+
+    private final String algorithm;
+    private final String expected;
+    private final CRC32 crc;
+    private final MessageDigest digest;
+
+    private ChunkChecksum(String algorithm, String expected) {
+        this.algorithm = algorithm;
+        this.expected = expected;
+        this.crc = algorithm.equals("crc32") ? new CRC32() : null;
+        this.digest = algorithm.equals("sha256") ? UploadSession.newDigest() : null;
+    }
+
+    /**
+     * @return null when the client sent no checksum
+     */
+    static ChunkChecksum parse(String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return null;
+        }
+        String value = spec.trim().toLowerCase(Locale.ROOT);
+        String algorithm;
+        int colon = value.indexOf(':');
+        if (colon >= 0) {
+            algorithm = value.substring(0, colon).replace("-", "");
+            value = value.substring(colon + 1);
+        } else {
+            algorithm = value.length() == 8 ? "crc32" : "sha256";
+        }
+
+        int length = algorithm.equals("crc32") ? 8 : algorithm.equals("sha256") ? 64 : -1;
+        if (length < 0) {
+            throw new IllegalArgumentException("Unsupported checksum algorithm: " + algorithm);
+        }
+        if (value.length() != length || !value.matches("[0-9a-f]+")) {
+            throw new IllegalArgumentException("Malformed " + algorithm + " checksum: " + spec);
+        }
+        return new ChunkChecksum(algorithm, value);
+    }
+
+    void update(byte[] data, int offset, int length) {
+        if (crc != null) {
+            crc.update(data, offset, length);
+        } else {
+            digest.update(data, offset, length);
+        }
+    }
+
+    String actual() {
+        if (crc != null) {
+            return String.format("%08x", crc.getValue());
+        }
+        return ManifestService.toHex(digest.digest());
+    }
+
+    /**
+     * @throws IllegalStateException when the received bytes do not match
+     */
+    void verify(long position) {
+        String actual = actual();
+        if (!actual.equals(expected)) {
+            throw new IllegalStateException("Chunk at " + position + " failed " + algorithm
+                    + " check: expected " + expected + ", got " + actual);
+        }
+    }
+}
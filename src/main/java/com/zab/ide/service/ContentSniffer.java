@@ -0,0 +1,157 @@
+package com.zab.ide.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Content-type detection from the first bytes of a file (magic numbers),
+ * falling back to a text/binary heuristic and the file extension
+ */
+final class ContentSniffer {
+
+    static final int HEAD_BYTES = 512;
+
+    static final String OCTET_STREAM = "application/octet-stream";
+
+    private ContentSniffer() {
+    }
+
+    /**
+     * Sniff the content type of a file from its first HEAD_BYTES bytes
+     */
+    static String sniff(Path file) throws IOException {
+        byte[] head = new byte[HEAD_BYTES];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while (length < head.length && (read = in.read(head, length, head.length - length)) != -1) {
+                length += read;
+            }
+        }
+        return sniff(head, length, file.getFileName().toString());
+    }
+
+    static String sniff(byte[] head, int length, String fileName) {
+        if (startsWith(head, length, 0x89, 'P', 'N', 'G')) {
+            return "image/png";
+        }
+        if (startsWith(head, length, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(head, length, 'R', 'I', 'F', 'F') && length >= 12
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "image/webp";
+        }
+        if (startsWith(head, length, 0x00, 0x00, 0x01, 0x00)) {
+            return "image/x-icon";
+        }
+        if (startsWith(head, length, '%', 'P', 'D', 'F')) {
+            return "application/pdf";
+        }
+        if (startsWith(head, length, 'P', 'K', 0x03, 0x04) || startsWith(head, length, 'P', 'K', 0x05, 0x06)) {
+            String lower = fileName.toLowerCase(Locale.ROOT);
+            if (lower.endsWith(".jar") || lower.endsWith(".war")) {
+                return "application/java-archive";
+            }
+            return "application/zip";
+        }
+        if (startsWith(head, length, 0x1F, 0x8B)) {
+            return "application/gzip";
+        }
+        if (startsWith(head, length, 0xCA, 0xFE, 0xBA, 0xBE)) {
+            return "application/java-vm";
+        }
+        if (startsWith(head, length, '7', 'z', 0xBC, 0xAF)) {
+            return "application/x-7z-compressed";
+        }
+        if (startsWith(head, length, 'R', 'a', 'r', '!')) {
+            return "application/vnd.rar";
+        }
+        if (startsWith(head, length, 0x7F, 'E', 'L', 'F')) {
+            return "application/x-elf";
+        }
+        if (startsWith(head, length, 0xFE, 0xFF) || startsWith(head, length, 0xFF, 0xFE)) {
+            return "text/plain; charset=UTF-16";
+        }
+
+        if (!looksLikeText(head, length)) {
+            // Two-byte magics that could also start a text file
+            if (startsWith(head, length, 'B', 'M')) {
+                return "image/bmp";
+            }
+            if (startsWith(head, length, 'M', 'Z')) {
+                return "application/x-msdownload";
+            }
+            return OCTET_STREAM;
+        }
+        return textType(head, length, fileName);
+    }
+
+    static boolean isText(String contentType) {
+        return contentType.startsWith("text/")
+                || contentType.startsWith("application/json")
+                || contentType.startsWith("application/javascript")
+                || contentType.startsWith("application/xml");
+    }
+
+    private static String textType(byte[] head, int length, String fileName) {
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".js")) {
+            return "application/javascript";
+        }
+        if (lower.endsWith(".json")) {
+            return "application/json";
+        }
+        if (lower.endsWith(".css")) {
+            return "text/css";
+        }
+        if (lower.endsWith(".html") || lower.endsWith(".htm") || lower.endsWith(".jsp")) {
+            return "text/html";
+        }
+
+        String start = new String(head, 0, length, StandardCharsets.UTF_8).trim().toLowerCase(Locale.ROOT);
+        if (start.startsWith("<?xml")) {
+            return "application/xml";
+        }
+        if (start.startsWith("<!doctype html") || start.startsWith("<html")) {
+            return "text/html";
+        }
+        return "text/plain";
+    }
+
+    /**
+     * No NUL bytes and few control characters other than whitespace and ESC
+     */
+    private static boolean looksLikeText(byte[] head, int length) {
+        int control = 0;
+        for (int i = 0; i < length; i++) {
+            int b = head[i] & 0xFF;
+            if (b == 0) {
+                return false;
+            }
+            if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x1B) {
+                control++;
+            }
+        }
+        return control * 10 <= length;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int... magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,320 @@
+package com.zab.ide.service;
+
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Recursive directory sizes (du) cached per directory.
+ * Each entry keeps the directory's own files total and its subdirectory names,
+ * keyed by the directory mtime, so a refresh only re-lists directories whose
+ * entries changed and otherwise costs one stat per directory.
+ */
+@Service
+public class DirectorySizeService implements FileChangeListener {
+
+    private static final ForkJoinPool SIZE_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final Map<Path, DirEntry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Compute (or refresh) the size of a directory tree
+     */
+    public DirSize computeSize(Path directory) throws IOException {
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("Path is not a directory: " + directory.getFileName());
+        }
+        try {
+            DirEntry entry = SIZE_POOL.invoke(new SizeTask(directory, false));
+            return entry.toSize(directory);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Every cached directory under root, largest first. Call computeSize first.
+     */
+    public List<DirSize> largestFirst(Path root) {
+        List<DirSize> sizes = new ArrayList<>();
+        for (Map.Entry<Path, DirEntry> e : cache.entrySet()) {
+            if (e.getKey().startsWith(root)) {
+                sizes.add(e.getValue().toSize(e.getKey()));
+            }
+        }
+        sizes.sort((a, b) -> Long.compare(b.size, a.size));
+        return sizes;
+    }
+
+    /**
+     * Cached recursive size of a directory, or -1 if it has not been computed
+     */
+    public long cachedSize(Path directory) {
+        DirEntry entry = cache.get(directory);
+        return entry != null ? entry.totalSize : -1;
+    }
+
+    /**
+     * Apply the size difference of one changed entry to its parent and to
+     * every cached ancestor: a file costs one stat, a changed directory's
+     * subtree is recomputed. The parent is not re-listed. The stat and the
+     * subtree walk run before taking the monitor, so size queries only wait
+     * for the O(depth) bookkeeping.
+     */
+    @Override
+    public void pathChanged(Path path) {
+        Path parent = path.getParent();
+        if (!cache.containsKey(path) && (parent == null || !cache.containsKey(parent))) {
+            return; // nothing cached is affected
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            attrs = null; // deleted or renamed away
+        }
+
+        // Files below a changed directory may have been rewritten without
+        // touching any directory mtime, so its subtree is sized from scratch
+        DirEntry fresh = null;
+        if (attrs != null && attrs.isDirectory()) {
+            cache.keySet().removeIf(p -> p.startsWith(path) && !p.equals(path));
+            try {
+                fresh = SIZE_POOL.invoke(new SizeTask(path, true));
+            } catch (UncheckedIOException e) {
+                attrs = null; // vanished while being sized
+            }
+        }
+
+        synchronized (this) {
+            DirEntry oldDir = cache.get(path);
+            if (fresh != null) {
+                cache.put(path, fresh);
+            } else if (oldDir != null) {
+                removeSubtree(path);
+            }
+            DirEntry parentEntry = parent != null ? cache.get(parent) : null;
+            if (parentEntry == null) {
+                return;
+            }
+            String name = path.getFileName().toString();
+
+            // What the entry contributed to the parent before the change
+            long oldSize = 0;
+            long oldFiles = 0;
+            long oldDirs = 0;
+            Long oldFileSize = parentEntry.files.remove(name);
+            if (parentEntry.childDirs.remove(name)) {
+                oldDirs = 1;
+                if (oldDir != null) {
+                    oldSize = oldDir.totalSize;
+                    oldFiles = oldDir.totalFiles;
+                    oldDirs += oldDir.totalDirs;
+                }
+            } else if (oldFileSize != null) {
+                oldSize = oldFileSize;
+                oldFiles = 1;
+            }
+
+            // And what it contributes now
+            long newSize = 0;
+            long newFiles = 0;
+            long newDirs = 0;
+            if (fresh != null) {
+                parentEntry.childDirs.add(name);
+                newSize = fresh.totalSize;
+                newFiles = fresh.totalFiles;
+                newDirs = 1 + fresh.totalDirs;
+            } else if (attrs != null && !attrs.isDirectory()) {
+                parentEntry.files.put(name, attrs.size());
+                newSize = attrs.size();
+                newFiles = 1;
+            }
+            parentEntry.directSize += (attrs != null && !attrs.isDirectory() ? attrs.size() : 0)
+                    - (oldFileSize != null ? oldFileSize : 0);
+
+            long sizeDelta = newSize - oldSize;
+            long filesDelta = newFiles - oldFiles;
+            long dirsDelta = newDirs - oldDirs;
+            if (sizeDelta == 0 && filesDelta == 0 && dirsDelta == 0) {
+                return;
+            }
+            for (Path ancestor = parent; ancestor != null; ancestor = ancestor.getParent()) {
+                DirEntry entry = cache.get(ancestor);
+                if (entry == null) {
+                    break;
+                }
+                entry.addTotals(sizeDelta, filesDelta, dirsDelta);
+            }
+        }
+    }
+
+    private void removeSubtree(Path dir) {
+        cache.keySet().removeIf(p -> p.startsWith(dir));
+    }
+
+    /**
+     * Sizes one directory and its subdirectories, reusing the listing of
+     * any cached directory whose mtime is unchanged.
+     * A detached task lists its own directory afresh and returns the entry
+     * without caching it, so pathChanged can swap it in and account for the
+     * difference; its subdirectories are cached as usual.
+     */
+    private class SizeTask extends RecursiveTask<DirEntry> {
+        private final Path dir;
+        private final boolean detached;
+
+        SizeTask(Path dir, boolean detached) {
+            this.dir = dir;
+            this.detached = detached;
+        }
+
+        @Override
+        protected DirEntry compute() {
+            try {
+                long modified = Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                        .lastModifiedTime().toMillis();
+
+                DirEntry cached = cache.get(dir);
+                long directSize;
+                Map<String, Long> files;
+                Set<String> childDirs;
+                if (!detached && cached != null && cached.lastModified == modified) {
+                    directSize = cached.directSize;
+                    files = cached.files;
+                    childDirs = cached.childDirs;
+                } else {
+                    directSize = 0;
+                    files = new ConcurrentHashMap<>();
+                    childDirs = ConcurrentHashMap.newKeySet();
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                        for (Path entry : stream) {
+                            BasicFileAttributes attrs;
+                            try {
+                                attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+                                        LinkOption.NOFOLLOW_LINKS);
+                            } catch (IOException e) {
+                                continue;
+                            }
+                            if (attrs.isDirectory()) {
+                                childDirs.add(entry.getFileName().toString());
+                            } else {
+                                files.put(entry.getFileName().toString(), attrs.size());
+                                directSize += attrs.size();
+                            }
+                        }
+                    }
+                    // Subdirectories deleted behind our back leave the cache with their parent's listing
+                    if (cached != null) {
+                        for (String name : cached.childDirs) {
+                            if (!childDirs.contains(name)) {
+                                removeSubtree(dir.resolve(name));
+                            }
+                        }
+                    }
+                }
+
+                long totalSize = directSize;
+                long totalFiles = files.size();
+                long totalDirs = childDirs.size();
+
+                List<SizeTask> subtasks = new ArrayList<>();
+                for (String name : childDirs) {
+                    SizeTask task = new SizeTask(dir.resolve(name), false);
+                    task.fork();
+                    subtasks.add(task);
+                }
+                for (SizeTask task : subtasks) {
+                    try {
+                        DirEntry childEntry = task.join();
+                        totalSize += childEntry.totalSize;
+                        totalFiles += childEntry.totalFiles;
+                        totalDirs += childEntry.totalDirs;
+                    } catch (UncheckedIOException e) {
+                        // Subdirectory vanished during the walk
+                    }
+                }
+
+                DirEntry entry = new DirEntry(modified, directSize, files, childDirs,
+                        totalSize, totalFiles, totalDirs);
+                if (!detached) {
+                    cache.put(dir, entry);
+                }
+                return entry;
+            } catch (IOException e) {
+                if (!detached) {
+                    cache.remove(dir);
+                }
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Size summary for one directory
+     */
+    public static class DirSize {
+        public String path;
+        public long size;
+        public long fileCount;
+        public long dirCount;
+
+        public DirSize() {
+        }
+    }
+
+    /**
+     * Cached state of one directory. The listing is replaced when the
+     * directory mtime changes; between listings pathChanged adjusts the
+     * file sizes and totals in place (under the service monitor).
+     */
+    private static class DirEntry {
+        final long lastModified;
+        // Direct files by name with their sizes, and direct subdirectory names
+        final Map<String, Long> files;
+        final Set<String> childDirs;
+        volatile long directSize;
+        volatile long totalSize;
+        volatile long totalFiles;
+        volatile long totalDirs;
+
+        DirEntry(long lastModified, long directSize, Map<String, Long> files, Set<String> childDirs,
+                long totalSize, long totalFiles, long totalDirs) {
+            this.lastModified = lastModified;
+            this.directSize = directSize;
+            this.files = files;
+            this.childDirs = childDirs;
+            this.totalSize = totalSize;
+            this.totalFiles = totalFiles;
+            this.totalDirs = totalDirs;
+        }
+
+        void addTotals(long size, long files, long dirs) {
+            totalSize += size;
+            totalFiles += files;
+            totalDirs += dirs;
+        }
+
+        DirSize toSize(Path path) {
+            DirSize size = new DirSize();
+            size.path = path.toString();
+            size.size = totalSize;
+            size.fileCount = totalFiles;
+            size.dirCount = totalDirs;
+            return size;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.zab.ide.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Runs a list of file operations in one request.
+ * Operations on unrelated paths run in parallel; an operation touching the
+ * same path (or a parent/child of it) as an earlier one waits for it.
+ */
+@Service
+public class FileBatchService {
+
+    private static final int BATCH_THREADS = 8;
+    private static final int MAX_OPERATIONS = 5000;
+
+    @Autowired
+    private FileManagementService fileManagementService;
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(BATCH_THREADS, r -> {
+        Thread t = new Thread(r, "file-batch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Execute a batch and return per-operation results.
+     * With rollbackOnFailure, the first failure stops operations that have not
+     * started yet and every completed operation is undone in reverse order.
+     */
+    public Map<String, Object> execute(BatchRequest request) throws IOException {
+        List<BatchOperation> operations = request.operations != null
+                ? request.operations : new ArrayList<BatchOperation>();
+
+        if (operations.size() > MAX_OPERATIONS) {
+            throw new IOException("Too many operations in batch (max " + MAX_OPERATIONS + ")");
+        }
+
+        int count = operations.size();
+        BatchResult[] results = new BatchResult[count];
+        List<List<Path>> touched = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BatchOperation op = operations.get(i);
+            if (op == null) {
+                // A null element in the JSON array; reported as missing fields
+                op = new BatchOperation();
+                operations.set(i, op);
+            }
+            results[i] = new BatchResult(i, op);
+            touched.add(touchedPaths(op, results[i]));
+        }
+
+        BatchContext context = new BatchContext(request.rollbackOnFailure);
+
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Void>[] futures = new CompletableFuture[count];
+        for (int i = 0; i < count; i++) {
+            List<CompletableFuture<Void>> deps = new ArrayList<>();
+            List<Integer> depIndexes = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                if (conflicts(touched.get(i), touched.get(j))) {
+                    deps.add(futures[j]);
+                    depIndexes.add(j);
+                }
+            }
+
+            final int index = i;
+            futures[i] = CompletableFuture.allOf(deps.toArray(new CompletableFuture[0]))
+                    .thenRunAsync(() -> run(operations.get(index), results[index], depIndexes, results, context), pool);
+        }
+
+        CompletableFuture.allOf(futures).join();
+
+        boolean rolledBack = false;
+        if (context.rollback && context.failed.get()) {
+            rollback(context.undoLog, results);
+            rolledBack = true;
+        }
+        purgeTrash(context);
+
+        List<BatchResult> resultList = new ArrayList<>();
+        boolean success = true;
+        for (BatchResult result : results) {
+            resultList.add(result);
+            success &= result.success;
+        }
+
+        Map<String, Object> response = new HashMap<String, Object>();
+        response.put("success", success);
+        response.put("rolledBack", rolledBack);
+        response.put("results", resultList);
+        response.put("count", count);
+        return response;
+    }
+
+    private void run(BatchOperation op, BatchResult result, List<Integer> depIndexes,
+            BatchResult[] results, BatchContext context) {
+        if (result.error != null) {
+            // Invalid operation, reported before scheduling
+            context.failed.set(true);
+            return;
+        }
+
+        for (Integer dep : depIndexes) {
+            if (!results[dep].success) {
+                result.error = "Skipped: depends on failed operation #" + dep;
+                context.failed.set(true);
+                return;
+            }
+        }
+
+        if (context.rollback && context.failed.get()) {
+            result.error = "Skipped: batch is rolling back";
+            return;
+        }
+
+        try {
+            switch (op.op) {
+                case "createFile":
+                    fileManagementService.createFile(op.path);
+                    context.undoLog.push(new Undo(op, null));
+                    break;
+                case "createFolder":
+                    fileManagementService.createFolder(op.path);
+                    context.undoLog.push(new Undo(op, null));
+                    break;
+                case "rename":
+                    fileManagementService.rename(op.path, op.newPath);
+                    context.undoLog.push(new Undo(op, null));
+                    break;
+                case "delete":
+                    if (context.rollback) {
+                        // Keep deleted content until the batch succeeds
+                        Path trashed = moveToTrash(op.path, context);
+                        context.undoLog.push(new Undo(op, trashed));
+                    } else {
+                        fileManagementService.delete(op.path);
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown operation: " + op.op);
+            }
+            result.success = true;
+        } catch (IOException | RuntimeException e) {
+            // Any failure stays with its operation, so the batch still reports and rolls back
+            result.error = errorMessage(e);
+            context.failed.set(true);
+        }
+    }
+
+    /**
+     * Undo completed operations, most recent first
+     */
+    private void rollback(Deque<Undo> undoLog, BatchResult[] results) {
+        for (Undo undo : undoLog) {
+            try {
+                switch (undo.op.op) {
+                    case "createFile":
+                    case "createFolder":
+                        fileManagementService.delete(undo.op.path);
+                        break;
+                    case "rename":
+                        fileManagementService.rename(undo.op.newPath, undo.op.path);
+                        break;
+                    case "delete":
+                        Path restored = fileManagementService.resolvePath(undo.op.path);
+                        Files.move(undo.trashed, restored);
+                        fileManagementService.notifyChanged(restored);
+                        break;
+                    default:
+                        break;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("[BATCH] Rollback failed for " + undo.op.op + " " + undo.op.path
+                        + ": " + e.getMessage());
+            }
+        }
+
+        for (BatchResult result : results) {
+            if (result.success) {
+                result.success = false;
+                result.error = "Rolled back";
+            }
+        }
+    }
+
+    private Path moveToTrash(String relativePath, BatchContext context) throws IOException {
+        Path source = fileManagementService.resolvePath(relativePath);
+        if (!Files.exists(source)) {
+            throw new IOException("Path does not exist: " + relativePath);
+        }
+
+        Path target = context.trashDir().resolve(UUID.randomUUID().toString());
+        fileManagementService.notifyBeforeChange(source, "delete");
+        Files.move(source, target);
+        fileManagementService.notifyChanged(source);
+        return target;
+    }
+
+    private void purgeTrash(BatchContext context) {
+        if (context.trashDir == null) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(context.trashDir)) {
+            Iterator<Path> paths = walk
+                    .sorted((a, b) -> b.getNameCount() - a.getNameCount())
+                    .iterator();
+            while (paths.hasNext()) {
+                Files.deleteIfExists(paths.next());
+            }
+        } catch (IOException e) {
+            System.out.println("[BATCH] Could not purge " + context.trashDir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resolve the paths an operation touches, recording validation errors on the result
+     */
+    private List<Path> touchedPaths(BatchOperation op, BatchResult result) {
+        List<Path> paths = new ArrayList<>();
+        try {
+            if (op.op == null || op.path == null) {
+                throw new IOException("Missing 'op' or 'path'");
+            }
+            paths.add(fileManagementService.resolvePath(op.path));
+            if ("rename".equals(op.op)) {
+                if (op.newPath == null) {
+                    throw new IOException("Missing 'newPath' for rename");
+                }
+                paths.add(fileManagementService.resolvePath(op.newPath));
+            }
+        } catch (IOException | RuntimeException e) {
+            result.error = errorMessage(e);
+        }
+        return paths;
+    }
+
+    private static String errorMessage(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    /**
+     * Two operations conflict if any of their paths is equal to, or an ancestor of, the other
+     */
+    private boolean conflicts(List<Path> a, List<Path> b) {
+        for (Path x : a) {
+            for (Path y : b) {
+                if (x.startsWith(y) || y.startsWith(x)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Batch request body
+     */
+    public static class BatchRequest {
+        public List<BatchOperation> operations;
+        public boolean rollbackOnFailure;
+
+        public BatchRequest() {
+        }
+    }
+
+    /**
+     * One operation: op is createFile, createFolder, delete or rename
+     */
+    public static class BatchOperation {
+        public String op;
+        public String path;
+        public String newPath;
+
+        public BatchOperation() {
+        }
+    }
+
+    /**
+     * Outcome of one operation
+     */
+    public static class BatchResult {
+        public int index;
+        public String op;
+        public String path;
+        public volatile boolean success;
+        public volatile String error;
+
+        public BatchResult() {
+        }
+
+        BatchResult(int index, BatchOperation op) {
+            this.index = index;
+            this.op = op.op;
+            this.path = op.path;
+        }
+    }
+
+    private static class Undo {
+        final BatchOperation op;
+        final Path trashed;
+
+        Undo(BatchOperation op, Path trashed) {
+            this.op = op;
+            this.trashed = trashed;
+        }
+    }
+
+    private static class BatchContext {
+        final boolean rollback;
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final Deque<Undo> undoLog = new ConcurrentLinkedDeque<>();
+        volatile Path trashDir;
+
+        BatchContext(boolean rollback) {
+            this.rollback = rollback;
+        }
+
+        synchronized Path trashDir() throws IOException {
+            if (trashDir == null) {
+                String catalinaHome = System.getProperty("catalina.home");
+                trashDir = Paths.get(catalinaHome, "temp", "zabide-batch", UUID.randomUUID().toString());
+                Files.createDirectories(trashDir);
+            }
+            return trashDir;
+        }
+    }
+}
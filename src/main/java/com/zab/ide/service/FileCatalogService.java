@@ -0,0 +1,443 @@
+package com.zab.ide.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory catalog of completed uploads behind /allFiles, so listing never
+ * touches the disk. Built from the completed folder at startup and kept
+ * current by finishUpload and deleteFile; download counts are flushed to
+ * disk periodically.
+ * Pages are cursor based: by name straight from the sorted map, by any other
+ * key from a sorted view that is rebuilt only after the catalog changes.
+ */
+@Service
+public class FileCatalogService {
+
+    private static final String UPLOAD_DIR = "zabftpupload";
+    private static final String COMPLETED_DIR = "completed";
+    private static final String DOWNLOADS_FILE = "downloads.properties";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final long FLUSH_INTERVAL_SECONDS = 60;
+    // Download counts change constantly; the by-downloads order may lag this much
+    private static final long DOWNLOADS_VIEW_MAX_AGE_MS = 5000;
+
+    static final String SORT_NAME = "name";
+    static final String SORT_SIZE = "size";
+    static final String SORT_UPLOADED = "uploaded";
+    static final String SORT_DOWNLOADS = "downloads";
+
+    @Autowired
+    private UploadBlobStore uploadBlobStore;
+
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private final AtomicLong structureVersion = new AtomicLong();
+    private final AtomicLong downloadsVersion = new AtomicLong();
+    private final Map<String, SortedView> views = new ConcurrentHashMap<>();
+    private volatile boolean downloadsDirty;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "catalog-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public void init() {
+        try {
+            load();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[CATALOG] Could not build file catalog: " + e.getMessage());
+        }
+        flusher.scheduleWithFixedDelay(this::flushDownloads, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+        flushDownloads();
+    }
+
+    /**
+     * One page of the catalog.
+     *
+     * @param sort   name (default), size, uploaded or downloads
+     * @param order  asc (default) or desc
+     * @param prefix only names starting with this
+     * @param cursor nextCursor of the previous page, for the same sort and order
+     * @param limit  page size, capped at MAX_PAGE_SIZE
+     * @throws IllegalArgumentException on an unknown sort or order, or a bad cursor
+     */
+    public FilePage list(String sort, String order, String prefix, String cursor, Integer limit) {
+        sort = sort == null || sort.isEmpty() ? SORT_NAME : sort;
+        boolean descending;
+        if (order == null || order.isEmpty() || order.equalsIgnoreCase("asc")) {
+            descending = false;
+        } else if (order.equalsIgnoreCase("desc")) {
+            descending = true;
+        } else {
+            throw new IllegalArgumentException("Unknown order: " + order);
+        }
+        prefix = prefix == null ? "" : prefix;
+        int pageSize = limit == null || limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        String[] after = cursor == null || cursor.isEmpty() ? null : decodeCursor(sort, cursor);
+
+        FilePage page = new FilePage();
+        page.files = new ArrayList<>();
+        if (sort.equals(SORT_NAME)) {
+            listByName(page, descending, prefix, after == null ? null : after[1], pageSize);
+        } else {
+            listByKey(page, sort, descending, prefix, after, pageSize);
+        }
+        return page;
+    }
+
+    /**
+     * Record a completed upload, replacing an earlier one of the same name
+     */
+    void put(String name, long size, String sha256, long uploadedAt) {
+        entries.put(name, new Entry(name, size, sha256, uploadedAt, 0));
+        structureVersion.incrementAndGet();
+        downloadsDirty = true;
+    }
+
+    void remove(String name) {
+        if (entries.remove(name) != null) {
+            structureVersion.incrementAndGet();
+            downloadsDirty = true;
+        }
+    }
+
+    /**
+     * Fill in a digest computed after the fact, e.g. for files completed
+     * before digests were recorded
+     */
+    void updateDigest(String name, String sha256) {
+        Entry entry = entries.get(name);
+        if (entry != null) {
+            entry.sha256 = sha256;
+        }
+    }
+
+    void recordDownload(String name) {
+        Entry entry = entries.get(name);
+        if (entry != null) {
+            entry.downloads.incrementAndGet();
+            downloadsVersion.incrementAndGet();
+            downloadsDirty = true;
+        }
+    }
+
+    private void listByName(FilePage page, boolean descending, String prefix, String afterName, int pageSize) {
+        NavigableMap<String, Entry> range;
+        if (descending) {
+            String upper = afterName != null ? afterName : prefix + Character.MAX_VALUE;
+            range = entries.headMap(upper, false).descendingMap();
+        } else {
+            range = afterName != null ? entries.tailMap(afterName, false) : entries.tailMap(prefix, true);
+        }
+
+        Iterator<Entry> it = range.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (!entry.name.startsWith(prefix)) {
+                // Names with the prefix are contiguous in name order
+                if (descending ? entry.name.compareTo(prefix) < 0 : entry.name.compareTo(prefix) > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (page.files.size() == pageSize) {
+                page.nextCursor = encodeCursor(SORT_NAME, 0, page.files.get(pageSize - 1).name);
+                break;
+            }
+            page.files.add(entry.toInfo());
+        }
+    }
+
+    private void listByKey(FilePage page, String sort, boolean descending, String prefix, String[] after,
+            int pageSize) {
+        SortedView view = view(sort);
+        int start;
+        if (after == null) {
+            start = descending ? view.rows.length - 1 : 0;
+        } else {
+            long afterKey;
+            try {
+                afterKey = Long.parseLong(after[0]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            // Position of the cursor row, or where it would be if it has since gone
+            int found = Arrays.binarySearch(view.rows, new Row(afterKey, after[1], null), Row.ORDER);
+            int insertion = found >= 0 ? found : -found - 1;
+            start = descending ? insertion - 1 : (found >= 0 ? found + 1 : insertion);
+        }
+
+        Row last = null;
+        for (int i = start; i >= 0 && i < view.rows.length; i += descending ? -1 : 1) {
+            Row row = view.rows[i];
+            if (!row.name.startsWith(prefix)) {
+                continue;
+            }
+            if (page.files.size() == pageSize) {
+                page.nextCursor = encodeCursor(sort, last.key, last.name);
+                break;
+            }
+            page.files.add(row.entry.toInfo());
+            last = row;
+        }
+    }
+
+    private SortedView view(String sort) {
+        if (!sort.equals(SORT_SIZE) && !sort.equals(SORT_UPLOADED) && !sort.equals(SORT_DOWNLOADS)) {
+            throw new IllegalArgumentException("Unknown sort: " + sort);
+        }
+        long structure = structureVersion.get();
+        long downloads = downloadsVersion.get();
+        SortedView view = views.get(sort);
+        boolean current = view != null && view.structureVersion == structure
+                && (!sort.equals(SORT_DOWNLOADS) || view.downloadsVersion == downloads
+                        || System.currentTimeMillis() - view.builtAt < DOWNLOADS_VIEW_MAX_AGE_MS);
+        if (current) {
+            return view;
+        }
+
+        List<Row> rows = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            rows.add(new Row(entry.sortKey(sort), entry.name, entry));
+        }
+        rows.sort(Row.ORDER);
+        view = new SortedView(rows.toArray(new Row[0]), structure, downloads);
+        views.put(sort, view);
+        return view;
+    }
+
+    private static String encodeCursor(String sort, long key, String name) {
+        String raw = sort + "\n" + key + "\n" + name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return {key, name} of the last row of the previous page
+     */
+    private static String[] decodeCursor(String sort, String cursor) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        String[] parts = raw.split("\n", 3);
+        if (parts.length != 3 || !parts[0].equals(sort)) {
+            throw new IllegalArgumentException("Cursor does not match sort " + sort);
+        }
+        return new String[] { parts[1], parts[2] };
+    }
+
+    private Path uploadDir() {
+        String catalinaHome = System.getProperty("catalina.home");
+        return Paths.get(catalinaHome, UPLOAD_DIR);
+    }
+
+    /**
+     * One pass over the completed folder: an entry per folder, described by
+     * the file downloadFile would serve from it
+     */
+    private void load() throws IOException {
+        Path completedDir = uploadDir().resolve(COMPLETED_DIR);
+        if (!Files.isDirectory(completedDir)) {
+            return;
+        }
+
+        Properties downloads = new Properties();
+        Path downloadsFile = uploadDir().resolve(DOWNLOADS_FILE);
+        if (Files.isRegularFile(downloadsFile)) {
+            try (InputStream in = Files.newInputStream(downloadsFile)) {
+                downloads.load(in);
+            }
+        }
+
+        try (DirectoryStream<Path> folders = Files.newDirectoryStream(completedDir)) {
+            for (Path folder : folders) {
+                if (!Files.isDirectory(folder)) {
+                    continue;
+                }
+                String name = folder.getFileName().toString();
+                Path file = folder.resolve(name);
+                if (!Files.isRegularFile(file)) {
+                    file = firstFile(folder);
+                    if (file == null) {
+                        continue;
+                    }
+                }
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                long count = 0;
+                try {
+                    count = Long.parseLong(downloads.getProperty(name, "0"));
+                } catch (NumberFormatException e) {
+                    // Corrupt count; start over
+                }
+                entries.put(name, new Entry(name, attrs.size(), uploadBlobStore.digestOf(name),
+                        attrs.lastModifiedTime().toMillis(), count));
+            }
+        }
+        structureVersion.incrementAndGet();
+        System.out.println("[CATALOG] Loaded " + entries.size() + " files");
+    }
+
+    private Path firstFile(Path folder) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void flushDownloads() {
+        if (!downloadsDirty) {
+            return;
+        }
+        downloadsDirty = false;
+        Properties downloads = new Properties();
+        for (Entry entry : entries.values()) {
+            long count = entry.downloads.get();
+            if (count > 0) {
+                downloads.setProperty(entry.name, Long.toString(count));
+            }
+        }
+        try {
+            Path downloadsFile = uploadDir().resolve(DOWNLOADS_FILE);
+            Files.createDirectories(downloadsFile.getParent());
+            Path temp = downloadsFile.resolveSibling(DOWNLOADS_FILE + ".part");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                downloads.store(out, "completed upload name -> download count");
+            }
+            Files.move(temp, downloadsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            downloadsDirty = true;
+            System.out.println("[CATALOG] Could not store download counts: " + e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+        final String name;
+        final long size;
+        final long uploadedAt;
+        final AtomicLong downloads;
+        volatile String sha256;
+
+        Entry(String name, long size, String sha256, long uploadedAt, long downloads) {
+            this.name = name;
+            this.size = size;
+            this.sha256 = sha256;
+            this.uploadedAt = uploadedAt;
+            this.downloads = new AtomicLong(downloads);
+        }
+
+        long sortKey(String sort) {
+            switch (sort) {
+                case SORT_SIZE:
+                    return size;
+                case SORT_UPLOADED:
+                    return uploadedAt;
+                default:
+                    return downloads.get();
+            }
+        }
+
+        FileInfo toInfo() {
+            FileInfo info = new FileInfo();
+            info.name = name;
+            info.size = size;
+            info.sha256 = sha256;
+            info.uploadedAt = uploadedAt;
+            info.downloads = downloads.get();
+            return info;
+        }
+    }
+
+    /**
+     * An entry with its sort key captured when the view was built, so a
+     * cursor keeps its place while counts move
+     */
+    private static final class Row {
+        static final Comparator<Row> ORDER = Comparator.<Row>comparingLong(r -> r.key).thenComparing(r -> r.name);
+
+        final long key;
+        final String name;
+        final Entry entry;
+
+        Row(long key, String name, Entry entry) {
+            this.key = key;
+            this.name = name;
+            this.entry = entry;
+        }
+    }
+
+    private static final class SortedView {
+        final Row[] rows;
+        final long structureVersion;
+        final long downloadsVersion;
+        final long builtAt = System.currentTimeMillis();
+
+        SortedView(Row[] rows, long structureVersion, long downloadsVersion) {
+            this.rows = rows;
+            this.structureVersion = structureVersion;
+            this.downloadsVersion = downloadsVersion;
+        }
+    }
+
+    public static class FileInfo {
+        public String name;
+        public long size;
+        public String sha256;
+        public long uploadedAt;
+        public long downloads;
+
+        public FileInfo() {
+        }
+    }
+
+    public static class FilePage {
+        public List<FileInfo> files;
+        // Pass back as cursor for the next page; null on the last page
+        public String nextCursor;
+
+        public FilePage() {
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.zab.ide.service;
+
+import java.nio.file.Path;
+
+/**
+ * Notified after the file manager creates, writes, renames or deletes a path
+ * under the webapp. For renames both the old and the new path are reported.
+ */
+public interface FileChangeListener {
+
+    void pathChanged(Path path);
+
+    /**
+     * Called before the file manager overwrites, deletes or renames an
+     * existing path, while the old content is still on disk
+     */
+    default void beforeChange(Path path, String action) {
+    }
+}
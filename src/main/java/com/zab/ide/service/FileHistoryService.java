@@ -0,0 +1,469 @@
+package com.zab.ide.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local history of files changed through the file manager.
+ * Before a write, patch, delete or rename the old content is stored as a
+ * gzip blob named by its SHA-256, so identical versions share one blob.
+ * Versions are recorded in an append-only journal and pruned by count per
+ * file, age and total blob size; pruned versions are appended as removal
+ * records and the journal is compacted once those outnumber the live ones.
+ * <p>
+ * Deleting a folder snapshots its files on the calling thread, since they
+ * are gone right after, so only the first MAX_FILES_PER_DELETE files (and
+ * MAX_BYTES_PER_DELETE bytes) are kept. Background jobs, zip extraction and
+ * sync report overwrites and deletes through the same beforeChange hook.
+ */
+@Service
+public class FileHistoryService implements FileChangeListener {
+
+    private static final String HISTORY_DIR = "history";
+    private static final String JOURNAL_FILE = "journal.tsv";
+    private static final String REMOVED = "-"; // journal record: -<TAB>id
+
+    private static final long MAX_SNAPSHOT_SIZE = 20L * 1024 * 1024; // larger files are not kept
+    private static final int MAX_VERSIONS_PER_FILE = 50;
+    private static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000; // 30 days
+    private static final long MAX_STORE_BYTES = 512L * 1024 * 1024; // compressed blobs
+    private static final int MAX_FILES_PER_DELETE = 200;
+    private static final long MAX_BYTES_PER_DELETE = 64L * 1024 * 1024;
+    private static final int JOURNAL_COMPACT_SLACK = 1000;
+
+    @Autowired
+    private FileManagementService fileManagementService;
+
+    // relative path -> versions, oldest first
+    private final Map<String, List<FileVersion>> versions = new HashMap<>();
+    // every version by id; ids grow with time, so the first entry is the oldest
+    private final TreeMap<Long, FileVersion> byId = new TreeMap<>();
+    private final Map<String, Integer> blobRefs = new HashMap<>();
+    private final Map<String, Long> blobSizes = new HashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private long storedBytes;
+    private int journalLines;
+
+    @PostConstruct
+    public void init() {
+        fileManagementService.addChangeListener(this);
+        try {
+            loadJournal();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[HISTORY] Could not load history journal: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void pathChanged(Path path) {
+        // Snapshots are taken in beforeChange
+    }
+
+    @Override
+    public void beforeChange(Path path, String action) {
+        try {
+            if (Files.isDirectory(path)) {
+                if (!"delete".equals(action)) {
+                    return; // a renamed folder keeps its content
+                }
+                int[] files = new int[1];
+                long[] bytes = new long[1];
+                Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (!attrs.isRegularFile()) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        if (files[0] >= MAX_FILES_PER_DELETE || bytes[0] + attrs.size() > MAX_BYTES_PER_DELETE) {
+                            System.out.println("[HISTORY] Folder delete of " + path + " over the snapshot limit; kept "
+                                    + files[0] + " files");
+                            return FileVisitResult.TERMINATE;
+                        }
+                        files[0]++;
+                        bytes[0] += attrs.size();
+                        snapshot(file, attrs.size(), action);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } else if (Files.isRegularFile(path)) {
+                snapshot(path, Files.size(path), action);
+            }
+        } catch (IOException e) {
+            System.out.println("[HISTORY] Snapshot failed for " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Versions of a file, newest first
+     */
+    public synchronized List<FileVersion> listVersions(String relativePath) throws IOException {
+        List<FileVersion> list = versions.get(key(fileManagementService.resolvePath(relativePath)));
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        List<FileVersion> result = new ArrayList<>(list);
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Content of one stored version
+     */
+    public byte[] readVersion(String relativePath, long versionId) throws IOException {
+        FileVersion version;
+        InputStream blob;
+        synchronized (this) {
+            version = findVersion(relativePath, versionId);
+            // Opened under the lock, so retention cannot delete the blob in between
+            blob = Files.newInputStream(blobPath(version.sha256));
+        }
+        try (InputStream raw = blob; InputStream in = new GZIPInputStream(raw)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(version.size, Integer.MAX_VALUE));
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Unified diff from a stored version to another version, or to the current
+     * file when againstId is null. A current file over MAX_SNAPSHOT_SIZE is
+     * not read; the result then only reports tooLarge.
+     */
+    public Map<String, Object> diff(String relativePath, long versionId, Long againstId) throws IOException {
+        byte[] from = readVersion(relativePath, versionId);
+        byte[] to;
+        String toName;
+        if (againstId != null) {
+            to = readVersion(relativePath, againstId);
+            toName = relativePath + "@" + againstId;
+        } else {
+            Path filePath = fileManagementService.resolvePath(relativePath);
+            boolean exists = Files.isRegularFile(filePath);
+            if (exists && Files.size(filePath) > MAX_SNAPSHOT_SIZE) {
+                Map<String, Object> result = new HashMap<String, Object>();
+                result.put("path", relativePath);
+                result.put("from", versionId);
+                result.put("to", "current");
+                result.put("binary", true);
+                result.put("tooLarge", true);
+                result.put("identical", false);
+                return result;
+            }
+            to = exists ? Files.readAllBytes(filePath) : new byte[0];
+            toName = relativePath;
+        }
+
+        String fromType = ContentSniffer.sniff(from, Math.min(from.length, ContentSniffer.HEAD_BYTES), relativePath);
+        String toType = ContentSniffer.sniff(to, Math.min(to.length, ContentSniffer.HEAD_BYTES), relativePath);
+        boolean binary = !ContentSniffer.isText(fromType) || !ContentSniffer.isText(toType);
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("path", relativePath);
+        result.put("from", versionId);
+        result.put("to", againstId != null ? againstId : "current");
+        result.put("binary", binary);
+        result.put("identical", Arrays.equals(from, to));
+        if (!binary) {
+            result.put("diff", LineDiff.unified(relativePath + "@" + versionId, toName,
+                    new String(from, StandardCharsets.UTF_8), new String(to, StandardCharsets.UTF_8)));
+        }
+        return result;
+    }
+
+    /**
+     * Put a stored version back in place. The content being replaced is
+     * itself snapshotted first, so a restore can be undone.
+     */
+    public FileVersion restore(String relativePath, long versionId) throws IOException {
+        FileVersion version = findVersion(relativePath, versionId);
+        byte[] content = readVersion(relativePath, versionId);
+        fileManagementService.writeBytes(fileManagementService.resolvePath(relativePath), content, "restore");
+        return version;
+    }
+
+    private synchronized FileVersion findVersion(String relativePath, long versionId) throws IOException {
+        List<FileVersion> list = versions.get(key(fileManagementService.resolvePath(relativePath)));
+        if (list != null) {
+            for (FileVersion version : list) {
+                if (version.id == versionId) {
+                    return version;
+                }
+            }
+        }
+        throw new IOException("Version " + versionId + " not found for " + relativePath);
+    }
+
+    /**
+     * Store the current content of a file as a new version
+     */
+    private void snapshot(Path file, long size, String action) throws IOException {
+        if (size > MAX_SNAPSHOT_SIZE) {
+            System.out.println("[HISTORY] Not keeping " + file + " (" + size + " bytes)");
+            return;
+        }
+
+        Path blobDir = historyDir().resolve("blobs");
+        Files.createDirectories(blobDir);
+        Path temp = blobDir.resolve(UUID.randomUUID() + ".tmp");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest);
+                    OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW))) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            String hash = ManifestService.toHex(digest.digest());
+
+            // Blob moves and deletes happen under the lock so pruning cannot race a new reference
+            synchronized (this) {
+                String path = key(file);
+                List<FileVersion> list = versions.get(path);
+                if (list != null && !list.isEmpty() && list.get(list.size() - 1).sha256.equals(hash)) {
+                    return; // unchanged since the last snapshot
+                }
+
+                Path blob = blobPath(hash);
+                if (!Files.exists(blob)) {
+                    Files.createDirectories(blob.getParent());
+                    Files.move(temp, blob, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                FileVersion version = new FileVersion();
+                version.id = nextId.getAndIncrement();
+                version.path = path;
+                version.sha256 = hash;
+                version.size = size;
+                version.storedSize = Files.size(blob);
+                version.time = System.currentTimeMillis();
+                version.action = action;
+
+                addVersion(version);
+                appendJournal(version);
+                enforceRetention(path);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void addVersion(FileVersion version) {
+        versions.computeIfAbsent(version.path, k -> new ArrayList<>()).add(version);
+        byId.put(version.id, version);
+        Integer refs = blobRefs.get(version.sha256);
+        if (refs == null) {
+            blobSizes.put(version.sha256, version.storedSize);
+            storedBytes += version.storedSize;
+            refs = 0;
+        }
+        blobRefs.put(version.sha256, refs + 1);
+    }
+
+    private void removeVersion(FileVersion version) {
+        byId.remove(version.id);
+        Integer refs = blobRefs.get(version.sha256);
+        if (refs == null || refs <= 1) {
+            blobRefs.remove(version.sha256);
+            Long size = blobSizes.remove(version.sha256);
+            storedBytes -= size != null ? size : 0;
+            try {
+                Files.deleteIfExists(blobPath(version.sha256));
+            } catch (IOException e) {
+                System.out.println("[HISTORY] Could not delete blob " + version.sha256 + ": " + e.getMessage());
+            }
+        } else {
+            blobRefs.put(version.sha256, refs - 1);
+        }
+    }
+
+    /**
+     * Drop versions beyond the per-file count, then the oldest overall while
+     * they are older than MAX_AGE or the blob store is over MAX_STORE_BYTES.
+     * Only the dropped versions are touched and journalled.
+     */
+    private void enforceRetention(String changedPath) throws IOException {
+        List<FileVersion> removed = new ArrayList<>();
+
+        List<FileVersion> list = versions.get(changedPath);
+        while (list.size() > MAX_VERSIONS_PER_FILE) {
+            FileVersion version = list.remove(0);
+            removeVersion(version);
+            removed.add(version);
+        }
+
+        long cutoff = System.currentTimeMillis() - MAX_AGE;
+        while (!byId.isEmpty()) {
+            FileVersion oldest = byId.firstEntry().getValue();
+            if (oldest.time >= cutoff && storedBytes <= MAX_STORE_BYTES) {
+                break;
+            }
+            List<FileVersion> fileVersions = versions.get(oldest.path);
+            fileVersions.remove(oldest);
+            if (fileVersions.isEmpty()) {
+                versions.remove(oldest.path);
+            }
+            removeVersion(oldest);
+            removed.add(oldest);
+        }
+
+        if (!removed.isEmpty()) {
+            if (journalLines + removed.size() > 2 * byId.size() + JOURNAL_COMPACT_SLACK) {
+                rewriteJournal();
+            } else {
+                appendRemovals(removed);
+            }
+        }
+    }
+
+    private Path historyDir() {
+        String catalinaHome = System.getProperty("catalina.home");
+        return Paths.get(catalinaHome, "zabide", HISTORY_DIR);
+    }
+
+    private Path blobPath(String hash) {
+        return historyDir().resolve("blobs").resolve(hash.substring(0, 2)).resolve(hash + ".gz");
+    }
+
+    private String key(Path path) {
+        return fileManagementService.getBasePath().relativize(path).toString().replace("\\", "/");
+    }
+
+    private void loadJournal() throws IOException {
+        Path journal = historyDir().resolve(JOURNAL_FILE);
+        if (!Files.exists(journal)) {
+            return;
+        }
+        synchronized (this) {
+            // id -> version in journal order; removal records drop earlier entries
+            Map<Long, FileVersion> live = new LinkedHashMap<>();
+            try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    journalLines++;
+                    String[] parts = line.split("\t", 7);
+                    if (parts.length == 2 && REMOVED.equals(parts[0])) {
+                        live.remove(Long.parseLong(parts[1]));
+                        continue;
+                    }
+                    if (parts.length != 7) {
+                        continue;
+                    }
+                    FileVersion version = new FileVersion();
+                    version.id = Long.parseLong(parts[0]);
+                    version.time = Long.parseLong(parts[1]);
+                    version.action = parts[2];
+                    version.size = Long.parseLong(parts[3]);
+                    version.storedSize = Long.parseLong(parts[4]);
+                    version.sha256 = parts[5];
+                    version.path = parts[6];
+                    live.put(version.id, version);
+                    nextId.set(Math.max(nextId.get(), version.id + 1));
+                }
+            }
+            for (FileVersion version : live.values()) {
+                if (Files.exists(blobPath(version.sha256))) {
+                    addVersion(version);
+                }
+            }
+            for (List<FileVersion> list : versions.values()) {
+                list.sort((a, b) -> Long.compare(a.id, b.id));
+            }
+        }
+    }
+
+    private void appendJournal(FileVersion version) throws IOException {
+        Path journal = historyDir().resolve(JOURNAL_FILE);
+        try (BufferedWriter writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(journalLine(version));
+            writer.newLine();
+        }
+        journalLines++;
+    }
+
+    private void appendRemovals(List<FileVersion> removed) throws IOException {
+        Path journal = historyDir().resolve(JOURNAL_FILE);
+        try (BufferedWriter writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (FileVersion version : removed) {
+                writer.write(REMOVED + "\t" + version.id);
+                writer.newLine();
+            }
+        }
+        journalLines += removed.size();
+    }
+
+    private void rewriteJournal() throws IOException {
+        Path journal = historyDir().resolve(JOURNAL_FILE);
+        Path temp = journal.resolveSibling(JOURNAL_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (FileVersion version : byId.values()) {
+                writer.write(journalLine(version));
+                writer.newLine();
+            }
+        }
+        Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING);
+        journalLines = byId.size();
+    }
+
+    private String journalLine(FileVersion version) {
+        return version.id + "\t" + version.time + "\t" + version.action + "\t" + version.size + "\t"
+                + version.storedSize + "\t" + version.sha256 + "\t" + version.path;
+    }
+
+    /**
+     * One stored version of a file
+     */
+    public static class FileVersion {
+        public long id;
+        public String path;
+        public String sha256;
+        public long size;
+        public long storedSize;
+        public long time;
+        public String action;
+
+        public FileVersion() {
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.zab.ide.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background copy, duplicate, move and delete jobs for directory trees.
+ * The tree is walked on the job thread and files are processed in parallel
+ * on a shared worker pool.
+ */
+@Service
+public class FileJobService {
+
+    private static final int WORKER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int MAX_RUNNING_JOBS = 4;
+    private static final int MAX_FINISHED_JOBS = 100;
+
+    @Autowired
+    private FileManagementService fileManagementService;
+
+    private final ExecutorService jobRunner = Executors.newFixedThreadPool(MAX_RUNNING_JOBS, r -> {
+        Thread t = new Thread(r, "file-job");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ExecutorService workers = Executors.newFixedThreadPool(WORKER_THREADS, r -> {
+        Thread t = new Thread(r, "file-job-worker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<String, FileJob> jobs = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Start a job and return its id
+     * type is copy, duplicate, move or delete; target is ignored for delete and duplicate
+     */
+    public String startJob(String type, String relativePath, String targetPath) throws IOException {
+        Path source = fileManagementService.resolvePath(relativePath);
+        if (!Files.exists(source)) {
+            throw new IOException("Path does not exist: " + relativePath);
+        }
+        if (source.equals(fileManagementService.getBasePath())) {
+            throw new IOException("Cannot run a job on the webapp root");
+        }
+
+        Path target = null;
+        switch (type) {
+            case "copy":
+            case "move":
+                if (targetPath == null) {
+                    throw new IOException("Missing 'target' for " + type);
+                }
+                target = fileManagementService.resolvePath(targetPath);
+                if (target.startsWith(source)) {
+                    throw new IOException("Target is inside the source: " + targetPath);
+                }
+                break;
+            case "duplicate":
+                target = duplicateName(source);
+                break;
+            case "delete":
+                break;
+            default:
+                throw new IOException("Unknown job type: " + type);
+        }
+
+        pruneFinishedJobs();
+
+        FileJob job = new FileJob(UUID.randomUUID().toString(), type, relativePath,
+                target != null ? fileManagementService.getBasePath().relativize(target).toString().replace("\\", "/") : null);
+        jobs.put(job.id, job);
+
+        final Path jobTarget = target;
+        jobRunner.submit(() -> runJob(job, source, jobTarget));
+        return job.id;
+    }
+
+    /**
+     * Get job status
+     */
+    public Map<String, Object> getJob(String jobId) throws IOException {
+        FileJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new IOException("Job not found: " + jobId);
+        }
+        return job.toMap();
+    }
+
+    /**
+     * List all known jobs, newest first
+     */
+    public List<Map<String, Object>> listJobs() {
+        List<FileJob> list = new ArrayList<>(jobs.values());
+        list.sort((a, b) -> Long.compare(b.startTime, a.startTime));
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        for (FileJob job : list) {
+            result.add(job.toMap());
+        }
+        return result;
+    }
+
+    /**
+     * Request cancellation; files already in flight are finished
+     */
+    public boolean cancelJob(String jobId) {
+        FileJob job = jobs.get(jobId);
+        if (job == null || job.isFinished()) {
+            return false;
+        }
+        job.cancelled = true;
+        return true;
+    }
+
+    private void runJob(FileJob job, Path source, Path target) {
+        job.state = "RUNNING";
+        try {
+            switch (job.type) {
+                case "copy":
+                case "duplicate":
+                    copyTree(job, source, target);
+                    break;
+                case "move":
+                    moveTree(job, source, target);
+                    break;
+                case "delete":
+                    deleteTree(job, source);
+                    break;
+                default:
+                    break;
+            }
+            job.state = job.cancelled ? "CANCELLED" : (job.failedFiles.get() > 0 ? "FAILED" : "COMPLETED");
+        } catch (IOException | RuntimeException e) {
+            job.error = e.getMessage();
+            job.state = job.cancelled ? "CANCELLED" : "FAILED";
+        } finally {
+            if (!"delete".equals(job.type)) {
+                fileManagementService.notifyChanged(target);
+            }
+            if (!"copy".equals(job.type) && !"duplicate".equals(job.type)) {
+                fileManagementService.notifyChanged(source);
+            }
+            job.endTime = System.currentTimeMillis();
+        }
+    }
+
+    private void copyTree(FileJob job, Path source, Path target) throws IOException {
+        if (!Files.isDirectory(source)) {
+            job.totalFiles.set(1);
+            Path parent = target.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            copyFile(job, source, target, Files.readAttributes(source, BasicFileAttributes.class));
+            return;
+        }
+
+        List<Future<?>> pending = new ArrayList<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (job.cancelled) {
+                    return FileVisitResult.TERMINATE;
+                }
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (job.cancelled) {
+                    return FileVisitResult.TERMINATE;
+                }
+                job.totalFiles.incrementAndGet();
+                job.totalBytes.addAndGet(attrs.size());
+                Path dest = target.resolve(source.relativize(file).toString());
+                pending.add(workers.submit(() -> copyFile(job, file, dest, attrs)));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        awaitAll(pending);
+    }
+
+    /**
+     * Copy one file with FileChannel.transferTo, skipping it when the target
+     * already has the same size and mtime
+     */
+    private void copyFile(FileJob job, Path file, Path dest, BasicFileAttributes attrs) {
+        if (job.cancelled) {
+            return;
+        }
+        try {
+            if (Files.exists(dest)) {
+                BasicFileAttributes existing = Files.readAttributes(dest, BasicFileAttributes.class);
+                if (existing.size() == attrs.size()
+                        && existing.lastModifiedTime().equals(attrs.lastModifiedTime())) {
+                    job.skippedFiles.incrementAndGet();
+                    job.processedFiles.incrementAndGet();
+                    return;
+                }
+                fileManagementService.notifyBeforeChange(dest, "copy");
+            }
+
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    long sent = in.transferTo(position, size - position, out);
+                    if (sent <= 0) {
+                        // transferTo returns 0 past the end, so a shrinking source would spin forever
+                        throw new EOFException("File shrank while copying");
+                    }
+                    position += sent;
+                    job.processedBytes.addAndGet(sent);
+                }
+            }
+            Files.setLastModifiedTime(dest, attrs.lastModifiedTime());
+            job.processedFiles.incrementAndGet();
+        } catch (IOException e) {
+            job.recordFailure(file, e);
+        }
+    }
+
+    private void moveTree(FileJob job, Path source, Path target) throws IOException {
+        if (Files.exists(target)) {
+            throw new IOException("Target already exists: " + job.target);
+        }
+        Path parent = target.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        // Same filesystem: a single rename
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            job.totalFiles.set(1);
+            job.processedFiles.set(1);
+            return;
+        } catch (AtomicMoveNotSupportedException | DirectoryNotEmptyException e) {
+            // Fall back to copy + delete below
+        }
+
+        copyTree(job, source, target);
+        if (!job.cancelled && job.failedFiles.get() == 0) {
+            deleteTree(job, source);
+        }
+    }
+
+    private void deleteTree(FileJob job, Path source) throws IOException {
+        // A move's source lives on at the target; only a real delete loses content
+        boolean keepHistory = "delete".equals(job.type);
+        if (!Files.isDirectory(source)) {
+            job.totalFiles.set(1);
+            if (keepHistory) {
+                fileManagementService.notifyBeforeChange(source, "delete");
+            }
+            Files.delete(source);
+            job.processedFiles.set(1);
+            return;
+        }
+
+        List<Future<?>> pending = new ArrayList<>();
+        List<Path> directories = new ArrayList<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (job.cancelled) {
+                    return FileVisitResult.TERMINATE;
+                }
+                job.totalFiles.incrementAndGet();
+                job.totalBytes.addAndGet(attrs.size());
+                pending.add(workers.submit(() -> {
+                    if (job.cancelled) {
+                        return;
+                    }
+                    try {
+                        if (keepHistory) {
+                            fileManagementService.notifyBeforeChange(file, "delete");
+                        }
+                        Files.delete(file);
+                        job.processedFiles.incrementAndGet();
+                        job.processedBytes.addAndGet(attrs.size());
+                    } catch (IOException e) {
+                        job.recordFailure(file, e);
+                    }
+                }));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                directories.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        awaitAll(pending);
+
+        // Post-order list: children come before their parents
+        if (!job.cancelled && job.failedFiles.get() == 0) {
+            for (Path dir : directories) {
+                Files.delete(dir);
+            }
+        }
+    }
+
+    private void awaitAll(List<Future<?>> pending) throws IOException {
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Job interrupted");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Pick "name copy", "name copy 2", ... next to the source
+     */
+    private Path duplicateName(Path source) {
+        String name = source.getFileName().toString();
+        String base = name;
+        String extension = "";
+        int lastDot = name.lastIndexOf('.');
+        if (lastDot > 0 && !Files.isDirectory(source)) {
+            base = name.substring(0, lastDot);
+            extension = name.substring(lastDot);
+        }
+
+        Path candidate = source.resolveSibling(base + " copy" + extension);
+        for (int i = 2; Files.exists(candidate); i++) {
+            candidate = source.resolveSibling(base + " copy " + i + extension);
+        }
+        return candidate;
+    }
+
+    private void pruneFinishedJobs() {
+        List<FileJob> finished = new ArrayList<>();
+        for (FileJob job : jobs.values()) {
+            if (job.isFinished()) {
+                finished.add(job);
+            }
+        }
+        if (finished.size() < MAX_FINISHED_JOBS) {
+            return;
+        }
+        finished.sort((a, b) -> Long.compare(a.endTime, b.endTime));
+        for (int i = 0; i <= finished.size() - MAX_FINISHED_JOBS; i++) {
+            jobs.remove(finished.get(i).id);
+        }
+    }
+
+    /**
+     * Job state and progress counters, updated from worker threads
+     */
+    private static class FileJob {
+        final String id;
+        final String type;
+        final String source;
+        final String target;
+        final long startTime = System.currentTimeMillis();
+        volatile long endTime;
+        volatile String state = "QUEUED";
+        volatile String error;
+        volatile boolean cancelled;
+
+        final AtomicLong totalFiles = new AtomicLong();
+        final AtomicLong processedFiles = new AtomicLong();
+        final AtomicLong skippedFiles = new AtomicLong();
+        final AtomicLong failedFiles = new AtomicLong();
+        final AtomicLong totalBytes = new AtomicLong();
+        final AtomicLong processedBytes = new AtomicLong();
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+
+        FileJob(String id, String type, String source, String target) {
+            this.id = id;
+            this.type = type;
+            this.source = source;
+            this.target = target;
+        }
+
+        boolean isFinished() {
+            return endTime != 0;
+        }
+
+        void recordFailure(Path file, IOException e) {
+            failedFiles.incrementAndGet();
+            // Keep the report small for trees with many failures
+            if (failures.size() < 100) {
+                failures.add(file + ": " + e.getMessage());
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<String, Object>();
+            map.put("id", id);
+            map.put("type", type);
+            map.put("source", source);
+            map.put("target", target);
+            map.put("state", state);
+            map.put("error", error);
+            map.put("startTime", startTime);
+            map.put("endTime", endTime);
+            map.put("totalFiles", totalFiles.get());
+            map.put("processedFiles", processedFiles.get());
+            map.put("skippedFiles", skippedFiles.get());
+            map.put("failedFiles", failedFiles.get());
+            map.put("totalBytes", totalBytes.get());
+            map.put("processedBytes", processedBytes.get());
+            synchronized (failures) {
+                map.put("failures", new ArrayList<String>(failures));
+            }
+            return map;
+        }
+    }
+}
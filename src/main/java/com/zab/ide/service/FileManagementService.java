@@ -1,27 +1,133 @@
 package com.zab.ide.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.zab.ide.service.DirectorySizeService.DirSize;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 @Service
 public class FileManagementService {
 
+    private static final int MAX_PAGE_SIZE = 5000;
+    private static final int MAX_CACHED_LISTINGS = 2048;
+    private static final long MAX_TEXT_SIZE = 10L * 1024 * 1024; // largest file read or patched as text
+    private static final int LOCK_STRIPES = 256;
+
+    // Directories first, then files, alphabetically
+    private static final Comparator<FileNode> NODE_ORDER = (a, b) -> {
+        if (a.isDirectory && !b.isDirectory)
+            return -1;
+        if (!a.isDirectory && b.isDirectory)
+            return 1;
+        int cmp = a.name.compareToIgnoreCase(b.name);
+        return cmp != 0 ? cmp : a.name.compareTo(b.name);
+    };
+
+    private static final ForkJoinPool TREE_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private static final int EXTRACT_PARALLEL_MAX_ENTRY = 1024 * 1024; // buffer entries up to 1MB
+    private static final int EXTRACT_MAX_BUFFERED = 64 * 1024 * 1024; // bytes waiting for a writer
+    private static final long EXTRACT_PROGRESS_TTL = 10 * 60 * 1000L;
+    private static final ExecutorService EXTRACT_POOL = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread t = new Thread(r, "zip-extract");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final Map<Path, DirectoryListing> listingCache = new ConcurrentHashMap<>();
+    // Striped so the set of monitors stays fixed however many paths are written
+    private final Object[] fileLocks = newLocks(LOCK_STRIPES);
+    private final Map<String, ExtractProgress> extractProgressMap = new ConcurrentHashMap<>();
+    private final List<FileChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    private DirectorySizeService directorySizeService;
+
+    @PostConstruct
+    public void init() {
+        addChangeListener(directorySizeService);
+    }
+
+    /**
+     * Register a listener for changes made through the file manager
+     */
+    public void addChangeListener(FileChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Tell listeners that a path was created, written, renamed or deleted
+     */
+    void notifyChanged(Path path) {
+        for (FileChangeListener listener : changeListeners) {
+            try {
+                listener.pathChanged(path);
+            } catch (RuntimeException e) {
+                System.out.println("[FILES] Change listener failed for " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tell listeners that an existing path is about to be overwritten,
+     * deleted or renamed
+     */
+    void notifyBeforeChange(Path path, String action) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        for (FileChangeListener listener : changeListeners) {
+            try {
+                listener.beforeChange(path, action);
+            } catch (RuntimeException e) {
+                System.out.println("[FILES] Change listener failed before " + action + " of " + path + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Get the base path for file operations (webapps/zab/)
      */
-    private Path getBasePath() {
+    Path getBasePath() {
         String catalinaHome = System.getProperty("catalina.home");
         return Paths.get(catalinaHome, "webapps", "zab");
     }
@@ -29,7 +135,7 @@ public class FileManagementService {
     /**
      * Validate and resolve path to prevent directory traversal attacks
      */
-    private Path resolvePath(String relativePath) throws IOException {
+    Path resolvePath(String relativePath) throws IOException {
         Path basePath = getBasePath();
         Path resolvedPath = basePath.resolve(relativePath).normalize();
 
@@ -46,6 +152,46 @@ public class FileManagementService {
      * Returns a tree structure with files and folders
      */
     public List<FileNode> listFilesAndFolders(String relativePath) throws IOException {
+        return readDirectory(resolveDirectory(relativePath), false).nodes;
+    }
+
+    /**
+     * List one page of a directory, starting after the given cursor.
+     * The first page reads the directory and caches the sorted snapshot keyed
+     * by the directory mtime, so following pages do not read it again.
+     *
+     * @throws IllegalArgumentException when the cursor is not one this method returned
+     */
+    public FilePage listPage(String relativePath, String cursor, int limit) throws IOException {
+        boolean firstPage = cursor == null || cursor.isEmpty();
+        if (!firstPage && (cursor.length() < 3 || !(cursor.startsWith("d/") || cursor.startsWith("f/")))) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        List<FileNode> nodes = readDirectory(resolveDirectory(relativePath), !firstPage).nodes;
+
+        int from = 0;
+        if (!firstPage) {
+            FileNode probe = new FileNode();
+            probe.isDirectory = cursor.startsWith("d/");
+            probe.name = cursor.substring(2);
+            int idx = Collections.binarySearch(nodes, probe, NODE_ORDER);
+            from = idx >= 0 ? idx + 1 : -idx - 1;
+        }
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        int to = Math.min(nodes.size(), from + pageSize);
+
+        FilePage page = new FilePage();
+        page.items = new ArrayList<>(nodes.subList(from, to));
+        page.total = nodes.size();
+        if (to < nodes.size()) {
+            FileNode last = nodes.get(to - 1);
+            page.nextCursor = (last.isDirectory ? "d/" : "f/") + last.name;
+        }
+        return page;
+    }
+
+    private Path resolveDirectory(String relativePath) throws IOException {
         Path targetPath = resolvePath(relativePath);
 
         if (!Files.exists(targetPath)) {
@@ -56,42 +202,73 @@ public class FileManagementService {
             throw new IOException("Path is not a directory: " + relativePath);
         }
 
-        List<FileNode> nodes = new ArrayList<>();
+        return targetPath;
+    }
 
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(targetPath)) {
+    /**
+     * Read and sort a directory with one attribute read per entry.
+     * With reuseSnapshot the cached listing is returned while the directory
+     * mtime is unchanged (entry sizes may be stale, names and order are not).
+     */
+    private DirectoryListing readDirectory(Path directory, boolean reuseSnapshot) throws IOException {
+        long modified = Files.getLastModifiedTime(directory).toMillis();
+        if (reuseSnapshot) {
+            DirectoryListing cached = listingCache.get(directory);
+            if (cached != null && cached.lastModified == modified) {
+                return cached;
+            }
+        }
+
+        List<FileNode> nodes = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
             for (Path entry : stream) {
-                FileNode node = new FileNode();
-                node.name = entry.getFileName().toString();
-                node.path = getBasePath().relativize(entry).toString().replace("\\", "/");
-                node.isDirectory = Files.isDirectory(entry);
-                node.size = Files.isDirectory(entry) ? 0 : Files.size(entry);
-                node.lastModified = Files.getLastModifiedTime(entry).toMillis();
-
-                // Get file extension
-                if (!node.isDirectory) {
-                    String fileName = node.name;
-                    int lastDot = fileName.lastIndexOf('.');
-                    node.extension = lastDot > 0 ? fileName.substring(lastDot + 1) : "";
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // Entry vanished or is unreadable (e.g. broken link)
+                    continue;
                 }
-
-                nodes.add(node);
+                nodes.add(toNode(entry, attrs));
             }
         }
 
         // Sort: directories first, then files, alphabetically
-        nodes.sort((a, b) -> {
-            if (a.isDirectory && !b.isDirectory)
-                return -1;
-            if (!a.isDirectory && b.isDirectory)
-                return 1;
-            return a.name.compareToIgnoreCase(b.name);
-        });
+        nodes.sort(NODE_ORDER);
 
-        return nodes;
+        DirectoryListing listing = new DirectoryListing(modified, Collections.unmodifiableList(nodes));
+        if (listingCache.size() >= MAX_CACHED_LISTINGS) {
+            listingCache.clear();
+        }
+        listingCache.put(directory, listing);
+        return listing;
+    }
+
+    /**
+     * Build a node from attributes that were already read for the entry
+     */
+    private FileNode toNode(Path entry, BasicFileAttributes attrs) {
+        FileNode node = new FileNode();
+        node.name = entry.getFileName() != null ? entry.getFileName().toString() : "zab";
+        node.path = getBasePath().relativize(entry).toString().replace("\\", "/");
+        node.isDirectory = attrs.isDirectory();
+        // Directories show their cached recursive size (0 until first computed)
+        node.size = node.isDirectory ? Math.max(0, directorySizeService.cachedSize(entry)) : attrs.size();
+        node.lastModified = attrs.lastModifiedTime().toMillis();
+
+        // Get file extension
+        if (!node.isDirectory) {
+            String fileName = node.name;
+            int lastDot = fileName.lastIndexOf('.');
+            node.extension = lastDot > 0 ? fileName.substring(lastDot + 1) : "";
+        }
+
+        return node;
     }
 
     /**
-     * Get full directory tree recursively
+     * Get full directory tree recursively.
+     * Subdirectories are walked in parallel on a shared fork/join pool.
      */
     public FileNode getDirectoryTree(String relativePath, int maxDepth) throws IOException {
         Path targetPath = resolvePath(relativePath);
@@ -100,48 +277,81 @@ public class FileManagementService {
             throw new IOException("Path does not exist: " + relativePath);
         }
 
-        return buildTree(targetPath, 0, maxDepth);
+        FileNode root = toNode(targetPath, Files.readAttributes(targetPath, BasicFileAttributes.class));
+        try {
+            return TREE_POOL.invoke(new TreeTask(targetPath, root, 0, maxDepth));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
-    private FileNode buildTree(Path path, int currentDepth, int maxDepth) throws IOException {
-        FileNode node = new FileNode();
-        node.name = path.getFileName() != null ? path.getFileName().toString() : "zab";
-        node.path = getBasePath().relativize(path).toString().replace("\\", "/");
-        node.isDirectory = Files.isDirectory(path);
-        node.size = Files.isDirectory(path) ? 0 : Files.size(path);
-        node.lastModified = Files.getLastModifiedTime(path).toMillis();
-
-        if (!node.isDirectory) {
-            String fileName = node.name;
-            int lastDot = fileName.lastIndexOf('.');
-            node.extension = lastDot > 0 ? fileName.substring(lastDot + 1) : "";
+    /**
+     * Fork/join task filling in the children of one directory node;
+     * each subdirectory below the depth limit is forked as its own task
+     */
+    private class TreeTask extends RecursiveTask<FileNode> {
+        private final Path path;
+        private final FileNode node;
+        private final int currentDepth;
+        private final int maxDepth;
+
+        TreeTask(Path path, FileNode node, int currentDepth, int maxDepth) {
+            this.path = path;
+            this.node = node;
+            this.currentDepth = currentDepth;
+            this.maxDepth = maxDepth;
         }
 
-        if (node.isDirectory && currentDepth < maxDepth) {
-            node.children = new ArrayList<>();
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
-                for (Path entry : stream) {
-                    node.children.add(buildTree(entry, currentDepth + 1, maxDepth));
+        @Override
+        protected FileNode compute() {
+            if (!node.isDirectory || currentDepth >= maxDepth) {
+                return node;
+            }
+
+            // Cached nodes are shared with the page cache, so expand copies
+            List<FileNode> children;
+            try {
+                children = new ArrayList<>(readDirectory(path, false).nodes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            if (currentDepth + 1 < maxDepth) {
+                List<TreeTask> subtasks = new ArrayList<>();
+                for (int i = 0; i < children.size(); i++) {
+                    FileNode child = children.get(i);
+                    if (child.isDirectory) {
+                        FileNode expanded = child.copy();
+                        children.set(i, expanded);
+                        TreeTask task = new TreeTask(path.resolve(child.name), expanded, currentDepth + 1, maxDepth);
+                        task.fork();
+                        subtasks.add(task);
+                    }
+                }
+                for (TreeTask task : subtasks) {
+                    task.join();
                 }
             }
 
-            // Sort children
-            node.children.sort((a, b) -> {
-                if (a.isDirectory && !b.isDirectory)
-                    return -1;
-                if (!a.isDirectory && b.isDirectory)
-                    return 1;
-                return a.name.compareToIgnoreCase(b.name);
-            });
+            node.children = children;
+            return node;
         }
-
-        return node;
     }
 
     /**
      * Read file content as text
      */
     public String readFileContent(String relativePath) throws IOException {
+        return readFileWithVersion(relativePath).content;
+    }
+
+    /**
+     * Read file content as text together with the version hash of its bytes.
+     * The version is the base a client sends back with a patch.
+     * Binary files (sniffed from their magic bytes) come back with binary set
+     * and no content.
+     */
+    public FileContent readFileWithVersion(String relativePath) throws IOException {
         Path filePath = resolvePath(relativePath);
 
         if (!Files.exists(filePath)) {
@@ -152,19 +362,31 @@ public class FileManagementService {
             throw new IOException("Cannot read directory as file: " + relativePath);
         }
 
+        // Binary files are not decoded; the client switches to /file/hex
+        FileContent result = new FileContent();
+        result.contentType = ContentSniffer.sniff(filePath);
+        result.size = Files.size(filePath);
+        if (!ContentSniffer.isText(result.contentType)) {
+            result.binary = true;
+            return result;
+        }
+
         // Check file size (prevent reading very large files)
-        long fileSize = Files.size(filePath);
-        if (fileSize > 10 * 1024 * 1024) { // 10MB limit
+        if (result.size > MAX_TEXT_SIZE) {
             throw new IOException("File too large to read (max 10MB): " + relativePath);
         }
 
         // Java 8 compatible: read all bytes and convert to string
         byte[] bytes = Files.readAllBytes(filePath);
-        return new String(bytes, StandardCharsets.UTF_8);
+
+        result.content = new String(bytes, textCharset(result.contentType));
+        result.version = versionOf(bytes);
+        return result;
     }
 
     /**
      * Write/override file content
+     * The upload is streamed to a temp file and swapped in atomically.
      */
     public void writeFileContent(String path, MultipartFile file) throws IOException {
         // Path filePath = resolvePath(relativePath);
@@ -175,9 +397,186 @@ public class FileManagementService {
             Files.createDirectories(parent);
         }
 
-        Files.write(filePath, file.getBytes(),
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING);
+        synchronized (lockFor(filePath)) {
+            notifyBeforeChange(filePath, "write");
+            try (InputStream in = file.getInputStream()) {
+                atomicWrite(filePath, in);
+            }
+        }
+        notifyChanged(filePath);
+    }
+
+    /**
+     * Replace a file's bytes atomically (used to restore an old version)
+     */
+    void writeBytes(Path filePath, byte[] content, String action) throws IOException {
+        Path parent = filePath.getParent();
+        if (parent != null && !Files.exists(parent)) {
+            Files.createDirectories(parent);
+        }
+
+        synchronized (lockFor(filePath)) {
+            notifyBeforeChange(filePath, action);
+            atomicWrite(filePath, new ByteArrayInputStream(content));
+        }
+        notifyChanged(filePath);
+    }
+
+    /**
+     * Apply a text patch against a known base version and commit it atomically.
+     * Edits use character offsets into the base text and must not overlap.
+     *
+     * The text is decoded and re-encoded in the file's own charset (as
+     * readFileWithVersion decodes it), keeping a UTF-16 byte order mark.
+     *
+     * @return version hash of the new content
+     * @throws IllegalStateException if the file changed since baseVersion
+     * @throws IllegalArgumentException if the file is binary, larger than
+     *                                  the text read limit, or its bytes do
+     *                                  not decode cleanly, so writing it back
+     *                                  would alter untouched content
+     * @throws IndexOutOfBoundsException if an edit falls outside the text or
+     *                                   overlaps another
+     */
+    public String applyPatch(FilePatch patch) throws IOException {
+        Path filePath = resolvePath(patch.path);
+
+        if (!Files.exists(filePath)) {
+            throw new IOException("File does not exist: " + patch.path);
+        }
+
+        if (Files.isDirectory(filePath)) {
+            throw new IOException("Cannot patch directory: " + patch.path);
+        }
+
+        synchronized (lockFor(filePath)) {
+            if (Files.size(filePath) > MAX_TEXT_SIZE) {
+                throw new IllegalArgumentException("File too large to patch (max 10MB): " + patch.path);
+            }
+            byte[] current = Files.readAllBytes(filePath);
+            if (patch.baseVersion == null || !patch.baseVersion.equals(versionOf(current))) {
+                throw new IllegalStateException("File was modified since version " + patch.baseVersion);
+            }
+
+            String contentType = ContentSniffer.sniff(current, Math.min(current.length, ContentSniffer.HEAD_BYTES),
+                    filePath.getFileName().toString());
+            if (!ContentSniffer.isText(contentType)) {
+                throw new IllegalArgumentException("Cannot patch binary file: " + patch.path);
+            }
+            Charset charset = textCharset(contentType);
+            // UTF-16 keeps its byte order: decode past the BOM as LE/BE, write the same BOM back
+            int bom = 0;
+            if (charset == StandardCharsets.UTF_16 && current.length >= 2) {
+                bom = 2;
+                charset = (current[0] & 0xFF) == 0xFF ? StandardCharsets.UTF_16LE : StandardCharsets.UTF_16BE;
+            }
+            String text;
+            try {
+                text = charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT)
+                        .decode(ByteBuffer.wrap(current, bom, current.length - bom))
+                        .toString();
+            } catch (CharacterCodingException e) {
+                throw new IllegalArgumentException("File is not valid " + charset.name()
+                        + " text; patching it would corrupt it: " + patch.path);
+            }
+            List<TextEdit> edits = patch.edits != null ? new ArrayList<>(patch.edits) : new ArrayList<TextEdit>();
+            edits.sort((x, y) -> Integer.compare(x.offset, y.offset));
+
+            StringBuilder out = new StringBuilder(text.length() + 64);
+            int cursor = 0;
+            for (TextEdit edit : edits) {
+                // Compared by subtraction so a huge deleteCount cannot overflow past the check
+                if (edit.offset < cursor || edit.offset > text.length() || edit.deleteCount < 0
+                        || edit.deleteCount > text.length() - edit.offset) {
+                    throw new IndexOutOfBoundsException("Invalid or overlapping edit at offset " + edit.offset);
+                }
+                out.append(text, cursor, edit.offset);
+                if (edit.text != null) {
+                    out.append(edit.text);
+                }
+                cursor = edit.offset + edit.deleteCount;
+            }
+            out.append(text, cursor, text.length());
+
+            byte[] encoded = out.toString().getBytes(charset);
+            byte[] updated = new byte[bom + encoded.length];
+            System.arraycopy(current, 0, updated, 0, bom);
+            System.arraycopy(encoded, 0, updated, bom, encoded.length);
+            notifyBeforeChange(filePath, "patch");
+            atomicWrite(filePath, new ByteArrayInputStream(updated));
+            notifyChanged(filePath);
+            return versionOf(updated);
+        }
+    }
+
+    /**
+     * Write content to a temp file next to the target, fsync it and rename it
+     * over the target, so readers only ever see the old or the new file
+     */
+    private void atomicWrite(Path target, InputStream content) throws IOException {
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    OutputStream out = Channels.newOutputStream(channel)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                out.flush();
+                channel.force(true);
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Per-file monitor so version checks and writes on one file do not interleave
+     */
+    private Object lockFor(Path filePath) {
+        return fileLocks[(filePath.hashCode() & 0x7fffffff) % fileLocks.length];
+    }
+
+    private static Object[] newLocks(int stripes) {
+        Object[] locks = new Object[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    /**
+     * Charset a sniffed text file is read and patched in
+     */
+    private static Charset textCharset(String contentType) {
+        return contentType.endsWith("charset=UTF-16") ? StandardCharsets.UTF_16 : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Version hash (SHA-256, hex) of file bytes
+     */
+    private String versionOf(byte[] bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(bytes);
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 
     /**
@@ -198,6 +597,7 @@ public class FileManagementService {
 
         // Create empty file
         Files.createFile(filePath);
+        notifyChanged(filePath);
     }
 
     /**
@@ -211,6 +611,7 @@ public class FileManagementService {
         }
 
         Files.createDirectories(folderPath);
+        notifyChanged(folderPath);
     }
 
     /**
@@ -223,6 +624,7 @@ public class FileManagementService {
             throw new IOException("Path does not exist: " + relativePath);
         }
 
+        notifyBeforeChange(targetPath, "delete");
         if (Files.isDirectory(targetPath)) {
             // Delete directory recursively
             deleteDirectoryRecursively(targetPath);
@@ -230,6 +632,7 @@ public class FileManagementService {
             // Delete file
             Files.delete(targetPath);
         }
+        notifyChanged(targetPath);
     }
 
     private void deleteDirectoryRecursively(Path directory) throws IOException {
@@ -263,7 +666,10 @@ public class FileManagementService {
             throw new IOException("Destination path already exists: " + newRelativePath);
         }
 
+        notifyBeforeChange(oldPath, "rename");
         Files.move(oldPath, newPath);
+        notifyChanged(oldPath);
+        notifyChanged(newPath);
     }
 
     /**
@@ -284,19 +690,8 @@ public class FileManagementService {
             throw new IOException("Path does not exist: " + relativePath);
         }
 
-        FileNode node = new FileNode();
-        node.name = targetPath.getFileName().toString();
+        FileNode node = toNode(targetPath, Files.readAttributes(targetPath, BasicFileAttributes.class));
         node.path = relativePath;
-        node.isDirectory = Files.isDirectory(targetPath);
-        node.size = Files.isDirectory(targetPath) ? 0 : Files.size(targetPath);
-        node.lastModified = Files.getLastModifiedTime(targetPath).toMillis();
-
-        if (!node.isDirectory) {
-            String fileName = node.name;
-            int lastDot = fileName.lastIndexOf('.');
-            node.extension = lastDot > 0 ? fileName.substring(lastDot + 1) : "";
-        }
-
         return node;
     }
 
@@ -317,27 +712,16 @@ public class FileManagementService {
         List<FileNode> results = new ArrayList<>();
         String lowerPattern = pattern.toLowerCase();
 
-        try (Stream<Path> paths = Files.walk(targetPath, 10)) {
-            paths.filter(Files::isRegularFile)
-                    .filter(p -> p.getFileName().toString().toLowerCase().contains(lowerPattern))
-                    .forEach(p -> {
-                        try {
-                            FileNode node = new FileNode();
-                            node.name = p.getFileName().toString();
-                            node.path = getBasePath().relativize(p).toString().replace("\\", "/");
-                            node.isDirectory = false;
-                            node.size = Files.size(p);
-                            node.lastModified = Files.getLastModifiedTime(p).toMillis();
-
-                            String fileName = node.name;
-                            int lastDot = fileName.lastIndexOf('.');
-                            node.extension = lastDot > 0 ? fileName.substring(lastDot + 1) : "";
-
-                            results.add(node);
-                        } catch (IOException e) {
-                            // Skip files that can't be read
-                        }
-                    });
+        try (Stream<Path> paths = Files.find(targetPath, 10,
+                (p, attrs) -> attrs.isRegularFile()
+                        && p.getFileName().toString().toLowerCase().contains(lowerPattern))) {
+            paths.forEach(p -> {
+                try {
+                    results.add(toNode(p, Files.readAttributes(p, BasicFileAttributes.class)));
+                } catch (IOException e) {
+                    // Skip files that can't be read
+                }
+            });
         }
 
         return results;
@@ -357,6 +741,80 @@ public class FileManagementService {
 
         public FileNode() {
         }
+
+        FileNode copy() {
+            FileNode node = new FileNode();
+            node.name = name;
+            node.path = path;
+            node.isDirectory = isDirectory;
+            node.size = size;
+            node.lastModified = lastModified;
+            node.extension = extension;
+            return node;
+        }
+    }
+
+    /**
+     * File text with the version hash of its bytes
+     */
+    public static class FileContent {
+        public String content;
+        public String version;
+        public String contentType;
+        public long size;
+        public boolean binary;
+
+        public FileContent() {
+        }
+    }
+
+    /**
+     * Patch request: edits against the content identified by baseVersion
+     */
+    public static class FilePatch {
+        public String path;
+        public String baseVersion;
+        public List<TextEdit> edits;
+
+        public FilePatch() {
+        }
+    }
+
+    /**
+     * Replace deleteCount characters at offset with text
+     */
+    public static class TextEdit {
+        public int offset;
+        public int deleteCount;
+        public String text;
+
+        public TextEdit() {
+        }
+    }
+
+    /**
+     * One page of a directory listing
+     */
+    public static class FilePage {
+        public List<FileNode> items;
+        public String nextCursor;
+        public int total;
+
+        public FilePage() {
+        }
+    }
+
+    /**
+     * Sorted directory snapshot cached by directory mtime
+     */
+    private static class DirectoryListing {
+        final long lastModified;
+        final List<FileNode> nodes;
+
+        DirectoryListing(long lastModified, List<FileNode> nodes) {
+            this.lastModified = lastModified;
+            this.nodes = nodes;
+        }
     }
 
     /**
@@ -452,4 +910,161 @@ public class FileManagementService {
         String folderName = folderPath.getFileName().toString();
         return folderName + ".zip";
     }
-}
\ No newline at end of file
+
+    /**
+     * Get recursive size and file count of a folder
+     */
+    public DirSize getDirectorySize(String relativePath) throws IOException {
+        DirSize size = directorySizeService.computeSize(resolveDirectory(relativePath));
+        size.path = relativePath;
+        return size;
+    }
+
+    /**
+     * Refresh sizes under a folder and list every subfolder, largest first
+     */
+    public List<DirSize> getSizeReport(String relativePath) throws IOException {
+        Path root = resolveDirectory(relativePath);
+        directorySizeService.computeSize(root);
+
+        List<DirSize> report = directorySizeService.largestFirst(root);
+        for (DirSize size : report) {
+            size.path = getBasePath().relativize(Paths.get(size.path)).toString().replace("\\", "/");
+        }
+        return report;
+    }
+
+    /**
+     * Extract a ZIP read straight from a stream into a folder under the base path.
+     * Small entries are buffered and written on the extract pool when parallel
+     * is set; large entries are always streamed to disk on the calling thread.
+     */
+    public ExtractProgress extractZip(String relativePath, InputStream zipStream, String extractId,
+            boolean parallel) throws IOException {
+        Path targetDir = resolvePath(relativePath);
+        Files.createDirectories(targetDir);
+
+        expireExtractProgress();
+        ExtractProgress progress = new ExtractProgress();
+        progress.id = extractId != null ? extractId : UUID.randomUUID().toString();
+        progress.startTime = System.currentTimeMillis();
+        extractProgressMap.put(progress.id, progress);
+
+        List<Future<?>> pending = new ArrayList<>();
+        Semaphore inFlight = new Semaphore(EXTRACT_MAX_BUFFERED);
+        try (ZipInputStream zis = new ZipInputStream(zipStream)) {
+            byte[] buffer = new byte[64 * 1024];
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                Path entryPath = targetDir.resolve(entry.getName()).normalize();
+
+                // Zip-slip guard: entries must stay inside the target folder
+                if (!entryPath.startsWith(targetDir) || entry.getName().startsWith("/")) {
+                    throw new SecurityException("Access denied: ZIP entry escapes target folder: " + entry.getName());
+                }
+
+                progress.entries.incrementAndGet();
+                if (entry.isDirectory()) {
+                    Files.createDirectories(entryPath);
+                    continue;
+                }
+
+                Path parent = entryPath.getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                notifyBeforeChange(entryPath, "extract");
+
+                // Buffer up to the parallel limit; bigger entries fall through to streaming
+                ByteArrayOutputStream head = new ByteArrayOutputStream();
+                int read = 0;
+                if (parallel) {
+                    while (head.size() <= EXTRACT_PARALLEL_MAX_ENTRY && (read = zis.read(buffer)) != -1) {
+                        head.write(buffer, 0, read);
+                    }
+                }
+
+                if (parallel && read == -1) {
+                    int permits = Math.max(1, head.size());
+                    inFlight.acquireUninterruptibly(permits);
+                    pending.add(EXTRACT_POOL.submit(() -> {
+                        try {
+                            Files.write(entryPath, head.toByteArray());
+                            progress.files.incrementAndGet();
+                            progress.bytes.addAndGet(head.size());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } finally {
+                            inFlight.release(permits);
+                        }
+                    }));
+                } else {
+                    try (OutputStream out = Files.newOutputStream(entryPath)) {
+                        head.writeTo(out);
+                        progress.bytes.addAndGet(head.size());
+                        while ((read = zis.read(buffer)) != -1) {
+                            out.write(buffer, 0, read);
+                            progress.bytes.addAndGet(read);
+                        }
+                    }
+                    progress.files.incrementAndGet();
+                }
+            }
+
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.error = "Interrupted";
+            throw new IOException("Extraction interrupted");
+        } catch (ExecutionException e) {
+            progress.error = e.getCause().getMessage();
+            throw new IOException("Failed to write ZIP entry: " + e.getCause().getMessage(), e.getCause());
+        } catch (IOException | RuntimeException e) {
+            progress.error = e.getMessage();
+            throw e;
+        } finally {
+            // endTime first, so the expiry sweep never sees done with no end time
+            progress.endTime = System.currentTimeMillis();
+            progress.done = true;
+            notifyChanged(targetDir);
+        }
+
+        return progress;
+    }
+
+    /**
+     * Get progress of a running or finished extraction
+     */
+    public ExtractProgress getExtractProgress(String extractId) {
+        expireExtractProgress();
+        return extractProgressMap.get(extractId);
+    }
+
+    /**
+     * Drop finished extractions older than EXTRACT_PROGRESS_TTL, whether or
+     * not anyone polled them
+     */
+    private void expireExtractProgress() {
+        long now = System.currentTimeMillis();
+        extractProgressMap.values().removeIf(progress -> progress.done && now - progress.endTime > EXTRACT_PROGRESS_TTL);
+    }
+
+    /**
+     * Progress of a ZIP extraction, updated from the extract pool
+     */
+    public static class ExtractProgress {
+        public String id;
+        public final AtomicLong entries = new AtomicLong();
+        public final AtomicLong files = new AtomicLong();
+        public final AtomicLong bytes = new AtomicLong();
+        public long startTime;
+        public volatile long endTime;
+        public volatile boolean done;
+        public volatile String error;
+
+        public ExtractProgress() {
+        }
+    }
+}
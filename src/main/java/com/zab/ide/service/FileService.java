@@ -1,35 +1,113 @@
 package com.zab.ide.service;
 
-import org.springframework.core.io.ByteArrayResource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpRange;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.zab.ide.model.UploadProgress;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.Arrays;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class FileService {
 
     private static final String UPLOAD_DIR = "zabftpupload";
     private static final String COMPLETED_DIR = "completed";
+    private static final String TEMP_DIR = "temp";
+    private static final String JOURNAL_SUFFIX = ".session";
+    private static final String MANIFEST_DIR = "manifests";
+    private static final long DEFAULT_CHUNK_SIZE = 10 * 1024 * 1024; // matches the upload pages
+    private static final int TRANSFER_BUFFER_SIZE = 1024 * 1024;
+
+    // Reused per chunk instead of allocating 1MB (plus the JDK's hidden
+    // direct copy of a heap buffer) for every request
+    private static final BlockingQueue<TransferBuffer> BUFFER_POOL = new ArrayBlockingQueue<>(16);
+
+    // Stale-session reaping and temp-space limits
+    private static final long SESSION_TTL_MS = 24 * 60 * 60 * 1000L;
+    private static final long QUOTA_EVICT_IDLE_MS = 60 * 60 * 1000L;
+    private static final long TEMP_QUOTA_BYTES = 20L * 1024 * 1024 * 1024;
+    private static final long MIN_FREE_BYTES = 1024L * 1024 * 1024;
+    private static final long REAP_INTERVAL_MINUTES = 10;
+
+    private static final int MAX_RANGES = 64;
+
+    @Autowired
+    private UploadProgressService uploadProgressService;
+
+    @Autowired
+    private UploadBlobStore uploadBlobStore;
+
+    @Autowired
+    private FileCatalogService fileCatalogService;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    // file name -> segment manifest of the completed upload
+    private final Map<String, SegmentManifest> segmentManifests = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "upload-reaper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Reload journaled uploads so clients can resume after a restart
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            loadSessions();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[UPLOAD] Could not reload upload sessions: " + e.getMessage());
+        }
+        reaper.scheduleWithFixedDelay(this::reap, REAP_INTERVAL_MINUTES, REAP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
 
-    private final Map<String, UploadProgress> progressMap = new ConcurrentHashMap<>();
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+        for (UploadSession session : sessions.values()) {
+            try {
+                session.close();
+            } catch (IOException e) {
+                // Ignore on shutdown
+            }
+        }
+    }
 
     private Path getUploadPath() throws IOException {
         String catalinaHome = System.getProperty("catalina.home");
@@ -40,17 +118,6 @@ public class FileService {
         return uploadPath;
     }
 
-    /** List files */
-    public List<String> listFiles() throws IOException {
-        Path completedDir = getUploadPath().resolve(COMPLETED_DIR);
-        Files.createDirectories(completedDir);
-        System.out.println(completedDir);
-
-        List<File> files = Arrays.asList(completedDir.toFile().listFiles());
-
-        return files.stream().map(File::getName).collect(Collectors.toList());
-    }
-
     /** Upload file (streaming) */
     public void uploadFile(MultipartFile file) throws IOException {
         Path target = getUploadPath().resolve(file.getOriginalFilename());
@@ -74,6 +141,7 @@ public class FileService {
                 Resource resource = new UrlResource(filePath.toUri());
 
                 if (resource.exists() && resource.isReadable()) {
+                    fileCatalogService.recordDownload(folderName);
                     return resource;
                 }
             }
@@ -82,69 +150,397 @@ public class FileService {
         throw new FileNotFoundException("No file found in folder: " + folderName);
     }
 
-    public String startUpload(String fileName, long totalBytes) {
+    /**
+     * Start a chunked upload. The temp file is preallocated to totalBytes so
+     * chunks can be written at their offsets in any order.
+     * Throws IllegalArgumentException for a negative size (0 is an empty
+     * file) and IllegalStateException when the upload would exceed the temp
+     * quota or leave less than MIN_FREE_BYTES on the disk.
+     */
+    public String startUpload(String fileName, long totalBytes, Long chunkSize) throws IOException {
+        if (totalBytes < 0) {
+            throw new IllegalArgumentException("totalSize must not be negative: " + totalBytes);
+        }
         String uploadId = UUID.randomUUID().toString();
+        long total = totalBytes;
 
-        UploadProgress progress = new UploadProgress();
-        progress.totalBytes = totalBytes;
-        progress.uploadedBytes = 0;
-        progress.startTime = System.currentTimeMillis();
+        Path tempDir = getUploadPath().resolve(TEMP_DIR);
+        Files.createDirectories(tempDir);
+        Path tempFile = tempDir.resolve(uploadId + ".tmp");
+        long size = chunkSize != null && chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+        UploadSession session = new UploadSession(uploadId, fileName, total, size,
+                System.currentTimeMillis(), tempFile);
+
+        // Reserve the space before preallocating, so parallel starts cannot overshoot
+        synchronized (sessions) {
+            if (reservedBytes() + total > TEMP_QUOTA_BYTES) {
+                evictIdle(total);
+            }
+            if (reservedBytes() + total > TEMP_QUOTA_BYTES) {
+                throw new IllegalStateException("Upload temp space quota exceeded: " + reservedBytes()
+                        + " of " + TEMP_QUOTA_BYTES + " bytes in use");
+            }
+            if (Files.getFileStore(tempDir).getUsableSpace() < total + MIN_FREE_BYTES) {
+                throw new IllegalStateException("Not enough free disk space for " + total + " bytes");
+            }
+            sessions.put(uploadId, session);
+        }
 
-        progressMap.put(uploadId, progress);
+        try {
+            try (RandomAccessFile file = new RandomAccessFile(tempFile.toFile(), "rw")) {
+                file.setLength(total);
+            }
+            saveJournal(session);
+        } catch (IOException e) {
+            sessions.remove(uploadId);
+            Files.deleteIfExists(tempFile);
+            deleteJournal(session);
+            throw e;
+        }
+        uploadProgressService.track(session);
 
         return uploadId;
     }
 
-    public void uploadChunk(String uploadId, MultipartFile chunk) throws IOException {
+    /**
+     * Write one chunk at its position. The position comes from the chunk
+     * index or byte offset; without either the chunk is appended after the
+     * contiguous data received so far (sequential clients).
+     * A chunk only counts as received once all of it is on disk, so a
+     * dropped connection leaves a gap the client can re-send.
+     *
+     * An optional checksum ("sha256:&lt;hex&gt;" or "crc32:&lt;hex&gt;") is checked
+     * as the chunk streams in; a mismatch throws IllegalStateException and
+     * the chunk stays missing so it can be retried. Received data is never
+     * overwritten: a chunk repeating a received range is ignored, and one
+     * that partly overlaps it throws IllegalStateException.
+     */
+    public void uploadChunk(String uploadId, MultipartFile chunk, Long offset, Integer index,
+            String checksum) throws IOException {
+        try (InputStream in = chunk.getInputStream()) {
+            writeChunk(uploadId, in, chunk.getSize(), offset, index, checksum);
+        }
+    }
+
+    /**
+     * Write a raw (non-multipart) request body as one chunk. The body goes
+     * straight from the request stream to the temp file, so unlike a
+     * multipart part it is never spooled to a container temp file first.
+     *
+     * @param length Content-Length of the body, or -1 when unknown
+     */
+    public void uploadRaw(String uploadId, InputStream body, long length, Long offset, Integer index,
+            String checksum) throws IOException {
+        writeChunk(uploadId, body, length, offset, index, checksum);
+    }
 
-        Path tempDir = getUploadPath().resolve("temp");
-        Files.createDirectories(tempDir);
+    private void writeChunk(String uploadId, InputStream in, long length, Long offset, Integer index,
+            String checksum) throws IOException {
+        UploadSession session = requireSession(uploadId);
+        ChunkChecksum check = ChunkChecksum.parse(checksum);
 
-        Path tempFile = tempDir.resolve(uploadId + ".tmp");
+        long position;
+        if (index != null) {
+            position = index * session.chunkSize;
+        } else if (offset != null) {
+            position = offset;
+        } else {
+            position = session.contiguousEnd();
+        }
 
-        try (OutputStream out = new BufferedOutputStream(
-                Files.newOutputStream(tempFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+        if (position < 0 || position + Math.max(0, length) > session.totalBytes) {
+            throw new IOException("Chunk at " + position + " (" + length + " bytes) is outside the upload");
+        }
+        session.touch();
+        if (length > 0 && session.isReceived(position, position + length)) {
+            // A retry of a chunk that already arrived and was verified; keep what is on disk
+            return;
+        }
 
-            InputStream in = chunk.getInputStream();
-            byte[] buffer = new byte[1024 * 1024]; // 1MB buffer
-            int read;
-            while ((read = in.read(buffer)) != -1) {
-                out.write(buffer, 0, read);
-                progressMap.get(uploadId).uploadedBytes += read;
+        FileChannel channel = session.channel();
+        // A chunk at the digest frontier feeds the whole-file hash as it streams
+        UploadDigest fileDigest = session.claimFrontier(position);
+        UploadDigest saved = fileDigest != null ? fileDigest.copy() : null;
+        long written = 0;
+        boolean received = false;
+        try {
+            boolean ok = false;
+            TransferBuffer buffer = borrowBuffer();
+            try {
+                int read;
+                while ((read = in.read(buffer.bytes)) != -1) {
+                    // A body without Content-Length is bounded here instead
+                    if (position + written + read > session.totalBytes) {
+                        throw new IOException("Chunk at " + position + " runs past the end of the upload");
+                    }
+                    if (check != null) {
+                        check.update(buffer.bytes, 0, read);
+                    }
+                    // Bytes are written before the checksum is known, so never over verified data
+                    if (session.overlapsReceived(position + written, position + written + read)) {
+                        throw new IllegalStateException("Chunk at " + position
+                                + " overlaps data already received");
+                    }
+                    if (fileDigest != null) {
+                        fileDigest.update(buffer.bytes, 0, read);
+                    }
+                    // Buffer casts keep the Java 8 method signatures when built on a newer JDK
+                    ((Buffer) buffer.direct).clear();
+                    buffer.direct.put(buffer.bytes, 0, read);
+                    ((Buffer) buffer.direct).flip();
+                    while (buffer.direct.hasRemaining()) {
+                        int n = channel.write(buffer.direct, position + written);
+                        written += n;
+                        session.written(n);
+                    }
+                }
+                if (check != null) {
+                    check.verify(position);
+                }
+                ok = true;
+            } finally {
+                BUFFER_POOL.offer(buffer);
+                if (!ok) {
+                    session.chunkDone(written);
+                }
+            }
+
+            session.markReceived(position, position + written);
+            received = true;
+            session.chunkDone(written);
+            session.touch();
+            saveJournal(session);
+        } finally {
+            // The frontier lock is handed back whatever failed above
+            if (fileDigest != null) {
+                if (received) {
+                    session.releaseFrontier(position + written);
+                } else {
+                    session.abandonFrontier(saved);
+                }
+            } else if (received) {
+                session.advanceDigest();
             }
         }
     }
 
-    public void finishUpload(String uploadId, String fileName) throws IOException {
+    private TransferBuffer borrowBuffer() {
+        TransferBuffer buffer = BUFFER_POOL.poll();
+        return buffer != null ? buffer : new TransferBuffer();
+    }
+
+    /**
+     * Staging array for the stream plus the direct buffer handed to the channel
+     */
+    private static class TransferBuffer {
+        final byte[] bytes = new byte[TRANSFER_BUFFER_SIZE];
+        final ByteBuffer direct = ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
+    }
+
+
+    /**
+     * Received and missing byte ranges of an upload, for resuming after a disconnect
+     */
+    public Map<String, Object> getUploadStatus(String uploadId) throws IOException {
+        UploadSession session = requireSession(uploadId);
+
+        Map<String, Object> status = new HashMap<String, Object>();
+        status.put("uploadId", uploadId);
+        status.put("fileName", session.fileName);
+        status.put("totalBytes", session.totalBytes);
+        status.put("chunkSize", session.chunkSize);
+        status.put("receivedBytes", session.receivedBytes());
+        status.put("received", session.receivedRanges());
+        status.put("missing", session.missingRanges());
+        status.put("chunks", session.chunkBitmap());
+        status.put("complete", session.isComplete());
+        return status;
+    }
+
+    private UploadSession requireSession(String uploadId) throws IOException {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            throw new FileNotFoundException("Unknown upload: " + uploadId);
+        }
+        return session;
+    }
+
+    /**
+     * Move a complete upload into place. The SHA-256 was built while the
+     * chunks arrived, so the file is not reread. An upload with missing
+     * bytes, or whose expectedSha256 from the client does not match, stays
+     * open and throws IllegalStateException.
+     *
+     * @return hex SHA-256 of the uploaded file
+     */
+    public String finishUpload(String uploadId, String fileName, String expectedSha256) throws IOException {
         // List<Integer> files =
         // listFiles().stream().map(Integer::parseInt).collect(Collectors.toList());
         // Integer nextFile = files.stream().max(Integer::compare).orElse(0) + 1;
 
+        UploadSession session = requireSession(uploadId);
+        if (!session.isComplete()) {
+            throw new IllegalStateException("Upload incomplete: " + session.receivedBytes() + " of "
+                    + session.totalBytes + " bytes received");
+        }
+        String sha256 = session.finishDigest();
+        if (expectedSha256 != null && !expectedSha256.trim().isEmpty()
+                && !expectedSha256.trim().equalsIgnoreCase(sha256)) {
+            throw new IllegalStateException("Upload SHA-256 mismatch: expected " + expectedSha256.trim()
+                    + ", got " + sha256);
+        }
+        session.close();
+
         if (fileName.equals("zabide.war")) {
             System.out.println("updating war file");
             String catalinaHome = System.getProperty("catalina.home");
-            Path tempFile = getUploadPath().resolve("temp").resolve(uploadId + ".tmp");
+            Path tempFile = session.tempFile;
             Path finalFile = Paths.get(catalinaHome, "webapps", "zabide.war");
 
             Files.createDirectories(finalFile.getParent());
             Files.move(tempFile, finalFile, StandardCopyOption.REPLACE_EXISTING);
 
-            progressMap.remove(uploadId);
+            sessions.remove(uploadId);
+            deleteJournal(session);
+            uploadProgressService.untrack(uploadId, "completed");
         } else {
 
-            Path tempFile = getUploadPath().resolve("temp").resolve(uploadId + ".tmp");
+            Path tempFile = session.tempFile;
             Path finalFile = getUploadPath().resolve(COMPLETED_DIR).resolve(fileName).resolve(fileName);
 
-            Files.createDirectories(finalFile.getParent());
-            Files.move(tempFile, finalFile, StandardCopyOption.REPLACE_EXISTING);
+            // Stored once per content; a re-upload of known bytes only adds a name
+            uploadBlobStore.store(fileName, tempFile, sha256, finalFile);
+            fileCatalogService.put(fileName, Files.size(finalFile), sha256, System.currentTimeMillis());
+
+            sessions.remove(uploadId);
+            deleteJournal(session);
+            uploadProgressService.untrack(uploadId, "completed");
+
+            // Segment hashes came out of the same pass as the file hash
+            saveSegmentManifest(buildSegmentManifest(fileName, finalFile, sha256, UploadSession.SEGMENT_SIZE,
+                    session.segmentHashes()));
+        }
+
+        return sha256;
+    }
+
+    /**
+     * Fixed-size segments of a completed upload with the SHA-256 of each, so
+     * clients can fetch segments in parallel through download-range, verify
+     * them and retry only the failed ones. Built at finishUpload; files
+     * uploaded earlier (or changed since) are hashed once here and cached.
+     */
+    public SegmentManifest getSegmentManifest(String fileName) throws IOException {
+        Path basePath = getBasePath().normalize();
+        Path filePath = basePath.resolve(fileName).resolve(fileName).normalize();
+        if (!filePath.startsWith(basePath) || !Files.isRegularFile(filePath)) {
+            throw new FileNotFoundException("File not found: " + fileName);
+        }
+        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+
+        SegmentManifest manifest = segmentManifests.get(fileName);
+        if (manifest == null) {
+            manifest = loadSegmentManifest(fileName);
+        }
+        if (manifest != null && manifest.size == attrs.size()
+                && manifest.lastModified == attrs.lastModifiedTime().toMillis()) {
+            segmentManifests.put(fileName, manifest);
+            fileCatalogService.updateDigest(fileName, manifest.sha256);
+            return manifest;
+        }
+
+        UploadDigest digest = new UploadDigest(UploadSession.SEGMENT_SIZE);
+        try (InputStream in = Files.newInputStream(filePath)) {
+            byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        String sha256 = digest.finish();
+        manifest = buildSegmentManifest(fileName, filePath, sha256, digest.segmentSize, digest.segmentHashes());
+        saveSegmentManifest(manifest);
+        fileCatalogService.updateDigest(fileName, sha256);
+        return manifest;
+    }
+
+    /**
+     * Delete a completed upload: its folder, its segment manifest, its
+     * catalog entry, and its blob when no other name shares the content
+     */
+    public void deleteFile(String fileName) throws IOException {
+        Path basePath = getBasePath().normalize();
+        Path folder = basePath.resolve(fileName).normalize();
+        if (!folder.startsWith(basePath) || folder.equals(basePath) || !Files.isDirectory(folder)) {
+            throw new FileNotFoundException("File not found: " + fileName);
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+
+        fileCatalogService.remove(fileName);
+        segmentManifests.remove(fileName);
+        Files.deleteIfExists(manifestPath(fileName));
+        uploadBlobStore.remove(fileName);
+    }
+
+    private SegmentManifest buildSegmentManifest(String fileName, Path filePath, String sha256, long segmentSize,
+            List<String> segmentHashes) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        SegmentManifest manifest = new SegmentManifest();
+        manifest.fileName = fileName;
+        manifest.size = attrs.size();
+        manifest.lastModified = attrs.lastModifiedTime().toMillis();
+        manifest.sha256 = sha256;
+        manifest.segmentSize = segmentSize;
+        manifest.segments = new ArrayList<>();
+        for (int i = 0; i < segmentHashes.size(); i++) {
+            Segment segment = new Segment();
+            segment.index = i;
+            segment.offset = i * segmentSize;
+            segment.length = Math.min(segmentSize, manifest.size - segment.offset);
+            segment.sha256 = segmentHashes.get(i);
+            manifest.segments.add(segment);
+        }
+        return manifest;
+    }
 
-            progressMap.remove(uploadId);
+    private void saveSegmentManifest(SegmentManifest manifest) {
+        segmentManifests.put(manifest.fileName, manifest);
+        try {
+            Path file = manifestPath(manifest.fileName);
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".part");
+            objectMapper.writeValue(temp.toFile(), manifest);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("[UPLOAD] Could not store segment manifest of " + manifest.fileName + ": "
+                    + e.getMessage());
         }
+    }
 
+    private SegmentManifest loadSegmentManifest(String fileName) {
+        try {
+            Path file = manifestPath(fileName);
+            return Files.isRegularFile(file) ? objectMapper.readValue(file.toFile(), SegmentManifest.class) : null;
+        } catch (IOException e) {
+            return null;
+        }
     }
 
+    private Path manifestPath(String fileName) throws IOException {
+        return getUploadPath().resolve(MANIFEST_DIR).resolve(fileName + ".json");
+    }
+
+    /**
+     * Polling fallback for the progress stream; counters are read without locking
+     */
     public UploadProgress getProgress(String uploadId) {
-        UploadProgress progress = progressMap.get(uploadId);
+        UploadProgress progress = uploadProgressService.getProgress(uploadId);
 
         if (progress == null) {
             // Optional: return empty object instead of null
@@ -154,17 +550,176 @@ public class FileService {
             empty.startTime = 0;
             return empty;
         }
-
         return progress;
     }
 
     public void cancelUpload(String uploadId) throws IOException {
         // Clean up temp file
-        Path tempFile = getUploadPath().resolve("temp").resolve(uploadId + ".tmp");
+        UploadSession session = sessions.remove(uploadId);
+        if (session != null) {
+            session.close();
+            deleteJournal(session);
+            uploadProgressService.untrack(uploadId, "cancelled");
+        }
+        Path tempFile = getUploadPath().resolve(TEMP_DIR).resolve(uploadId + ".tmp");
         if (Files.exists(tempFile)) {
             Files.delete(tempFile);
         }
-        progressMap.remove(uploadId);
+    }
+
+    /**
+     * Record the session and its received ranges next to the temp file.
+     * The data is forced to disk first, so a journaled range is never ahead
+     * of what a crash would leave behind.
+     */
+    private void saveJournal(UploadSession session) throws IOException {
+        synchronized (session.journalLock) {
+            if (!sessions.containsKey(session.uploadId)) {
+                return;
+            }
+            session.channel().force(false);
+
+            Properties journal = new Properties();
+            journal.setProperty("fileName", session.fileName);
+            journal.setProperty("totalBytes", Long.toString(session.totalBytes));
+            journal.setProperty("chunkSize", Long.toString(session.chunkSize));
+            journal.setProperty("startTime", Long.toString(session.startTime));
+            journal.setProperty("ranges", session.rangesToString());
+
+            Path journalFile = journalPath(session);
+            Path temp = journalFile.resolveSibling(journalFile.getFileName() + ".part");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                journal.store(out, "upload " + session.uploadId);
+            }
+            Files.move(temp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void deleteJournal(UploadSession session) throws IOException {
+        synchronized (session.journalLock) {
+            Files.deleteIfExists(journalPath(session));
+        }
+    }
+
+    private Path journalPath(UploadSession session) {
+        return session.tempFile.resolveSibling(session.uploadId + JOURNAL_SUFFIX);
+    }
+
+    private void loadSessions() throws IOException {
+        Path tempDir = getUploadPath().resolve(TEMP_DIR);
+        if (!Files.isDirectory(tempDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tempDir, "*" + JOURNAL_SUFFIX)) {
+            for (Path journalFile : stream) {
+                String name = journalFile.getFileName().toString();
+                String uploadId = name.substring(0, name.length() - JOURNAL_SUFFIX.length());
+                Path tempFile = tempDir.resolve(uploadId + ".tmp");
+                if (!Files.exists(tempFile)) {
+                    Files.deleteIfExists(journalFile);
+                    continue;
+                }
+
+                Properties journal = new Properties();
+                try (InputStream in = Files.newInputStream(journalFile)) {
+                    journal.load(in);
+                }
+                try {
+                    UploadSession session = new UploadSession(uploadId, journal.getProperty("fileName"),
+                            Long.parseLong(journal.getProperty("totalBytes")),
+                            Long.parseLong(journal.getProperty("chunkSize")),
+                            Long.parseLong(journal.getProperty("startTime")), tempFile);
+                    session.restoreRanges(journal.getProperty("ranges"));
+                    session.restoreActivity(Files.getLastModifiedTime(journalFile).toMillis());
+                    sessions.put(uploadId, session);
+                    uploadProgressService.track(session);
+                } catch (RuntimeException e) {
+                    System.out.println("[UPLOAD] Skipping unreadable journal " + name + ": " + e.getMessage());
+                }
+            }
+        }
+        System.out.println("[UPLOAD] Reloaded " + sessions.size() + " upload sessions");
+    }
+
+    /**
+     * Expire sessions idle past SESSION_TTL_MS, delete temp-folder leftovers
+     * no session owns, and bring the reserved space back under the quota
+     */
+    void reap() {
+        long now = System.currentTimeMillis();
+        for (UploadSession session : new ArrayList<>(sessions.values())) {
+            if (now - session.lastActivity() > SESSION_TTL_MS) {
+                expire(session);
+            }
+        }
+
+        try {
+            Path tempDir = getUploadPath().resolve(TEMP_DIR);
+            if (Files.isDirectory(tempDir)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(tempDir)) {
+                    for (Path file : stream) {
+                        String name = file.getFileName().toString();
+                        int dot = name.indexOf('.');
+                        String owner = dot > 0 ? name.substring(0, dot) : name;
+                        if (!sessions.containsKey(owner)
+                                && now - Files.getLastModifiedTime(file).toMillis() > SESSION_TTL_MS) {
+                            Files.deleteIfExists(file);
+                            System.out.println("[UPLOAD] Deleted orphaned temp file " + name);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("[UPLOAD] Temp cleanup failed: " + e.getMessage());
+        }
+
+        synchronized (sessions) {
+            evictIdle(0);
+        }
+    }
+
+    /**
+     * Expire the longest-idle sessions (idle at least QUOTA_EVICT_IDLE_MS)
+     * until needed more bytes fit under the quota. Caller holds the sessions lock.
+     */
+    private void evictIdle(long needed) {
+        List<UploadSession> idle = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (UploadSession session : sessions.values()) {
+            if (now - session.lastActivity() > QUOTA_EVICT_IDLE_MS) {
+                idle.add(session);
+            }
+        }
+        idle.sort((a, b) -> Long.compare(a.lastActivity(), b.lastActivity()));
+        for (UploadSession session : idle) {
+            if (reservedBytes() + needed <= TEMP_QUOTA_BYTES) {
+                break;
+            }
+            expire(session);
+        }
+    }
+
+    private long reservedBytes() {
+        long total = 0;
+        for (UploadSession session : sessions.values()) {
+            total += session.totalBytes;
+        }
+        return total;
+    }
+
+    private void expire(UploadSession session) {
+        if (sessions.remove(session.uploadId) == null) {
+            return;
+        }
+        try {
+            session.close();
+            deleteJournal(session);
+            Files.deleteIfExists(session.tempFile);
+            System.out.println("[UPLOAD] Expired idle upload " + session.uploadId + " (" + session.fileName + ")");
+        } catch (IOException e) {
+            System.out.println("[UPLOAD] Could not remove expired upload " + session.uploadId + ": " + e.getMessage());
+        }
+        uploadProgressService.untrack(session.uploadId, "expired");
     }
 
     private Path getBasePath() {
@@ -173,53 +728,220 @@ public class FileService {
         return Paths.get(catalinaHome, UPLOAD_DIR, COMPLETED_DIR);
     }
 
-    public ResponseEntity<Resource> downloadRange(
-            String filename,
-            HttpHeaders headers) throws IOException {
+    /**
+     * Serve a completed upload honouring Range (one or several byte ranges)
+     * and If-Range. Bodies are streamed from FileChannel regions, never
+     * buffered, so parallel segment downloads cost almost no heap.
+     */
+    public void downloadRange(String filename, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
 
-        Path filePath = getBasePath()
+        Path basePath = getBasePath().normalize();
+        Path filePath = basePath
                 .resolve(filename)
                 .resolve(filename)
                 .normalize();
 
-        if (!Files.exists(filePath)) {
-            return ResponseEntity.notFound().build();
+        if (!filePath.startsWith(basePath) || !Files.isRegularFile(filePath)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
 
-        long fileLength = Files.size(filePath);
+        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        long fileLength = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        String etag = "\"" + Long.toHexString(fileLength) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+
+        List<long[]> ranges = null;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && ifRangeMatches(request, etag, lastModified)) {
+            List<HttpRange> httpRanges;
+            try {
+                httpRanges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                // A malformed Range header is ignored
+                httpRanges = null;
+            }
+            try {
+                ranges = httpRanges != null ? toRanges(httpRanges, fileLength) : null;
+            } catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileLength);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            // A segmented download fetches its first segment once, so count that
+            if (ranges == null || ranges.get(0)[0] == 0) {
+                fileCatalogService.recordDownload(filename);
+            }
+
+            // No Range (or a stale If-Range) → full file
+            if (ranges == null) {
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+                response.setContentLengthLong(fileLength);
+                sendRegion(response, channel, 0, fileLength);
+                return;
+            }
 
-        // No Range → full file
-        if (headers.getRange().isEmpty()) {
-            Resource resource = new UrlResource(filePath.toUri());
-            return ResponseEntity.ok()
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                    .contentLength(fileLength)
-                    .body(resource);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            if (ranges.size() == 1) {
+                long start = ranges.get(0)[0];
+                long end = ranges.get(0)[1];
+                response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileLength);
+                response.setContentLengthLong(end - start + 1);
+                sendRegion(response, channel, start, end - start + 1);
+                return;
+            }
+
+            // Several ranges → multipart/byteranges, with an exact Content-Length
+            String boundary = UUID.randomUUID().toString().replace("-", "");
+            List<byte[]> partHeaders = new ArrayList<>();
+            long contentLength = 0;
+            for (long[] range : ranges) {
+                byte[] header = ("\r\n--" + boundary + "\r\n"
+                        + "Content-Type: " + MediaType.APPLICATION_OCTET_STREAM_VALUE + "\r\n"
+                        + "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + fileLength + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII);
+                partHeaders.add(header);
+                contentLength += header.length + range[1] - range[0] + 1;
+            }
+            byte[] trailer = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+            contentLength += trailer.length;
+
+            response.setContentType("multipart/byteranges; boundary=" + boundary);
+            response.setContentLengthLong(contentLength);
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            for (int i = 0; i < ranges.size(); i++) {
+                out.write(partHeaders.get(i));
+                transfer(channel, ranges.get(i)[0], ranges.get(i)[1] - ranges.get(i)[0] + 1, target);
+            }
+            out.write(trailer);
+            out.flush();
         }
+    }
 
-        // Handle Range
-        HttpRange range = headers.getRange().get(0);
-        long start = range.getRangeStart(fileLength);
-        long end = range.getRangeEnd(fileLength);
-        long contentLength = end - start + 1;
+    /**
+     * If-Range holds an ETag or an HTTP date; a range is only served when it
+     * still matches, otherwise the client gets the whole (changed) file
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Weak validators never match for ranges
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
 
-        // Read the specific range
-        byte[] data = new byte[(int) contentLength];
-        try (RandomAccessFile file = new RandomAccessFile(filePath.toFile(), "r")) {
-            file.seek(start);
-            file.readFully(data);
+    /**
+     * Resolve ranges to inclusive [start, end] pairs. Several ranges are sorted
+     * and overlapping or adjacent ones merged, so a client cannot make the
+     * server send the same bytes many times over.
+     *
+     * @throws IllegalArgumentException when no range is satisfiable
+     */
+    private List<long[]> toRanges(List<HttpRange> httpRanges, long fileLength) {
+        if (httpRanges.isEmpty() || httpRanges.size() > MAX_RANGES) {
+            throw new IllegalArgumentException("Unsupported number of ranges: " + httpRanges.size());
+        }
+        List<long[]> ranges = new ArrayList<>();
+        for (HttpRange httpRange : httpRanges) {
+            try {
+                long start = httpRange.getRangeStart(fileLength);
+                long end = Math.min(httpRange.getRangeEnd(fileLength), fileLength - 1);
+                if (start < fileLength && start <= end) {
+                    ranges.add(new long[] { start, end });
+                }
+            } catch (IllegalArgumentException e) {
+                // Unsatisfiable on its own; the others may still be served
+            }
+        }
+        if (ranges.isEmpty()) {
+            throw new IllegalArgumentException("No satisfiable range");
+        }
+        if (ranges.size() == 1) {
+            return ranges;
         }
 
-        Resource resource = new ByteArrayResource(data);
+        ranges.sort((a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
 
-        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .header(HttpHeaders.CONTENT_RANGE,
-                        "bytes " + start + "-" + end + "/" + fileLength)
-                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                .contentLength(contentLength)
-                .body(resource);
+    /**
+     * Copy one region to the response stream. Not handed to sendfile: the
+     * bytes have to pass through TransferShapingFilter to be paced.
+     */
+    private void sendRegion(HttpServletResponse response, FileChannel channel, long start, long count)
+            throws IOException {
+        OutputStream out = response.getOutputStream();
+        transfer(channel, start, count, Channels.newChannel(out));
+        out.flush();
     }
 
+    /**
+     * FileChannel.transferTo copies through a small direct buffer (or the
+     * kernel, for socket targets), so no byte array the size of the range
+     */
+    private void transfer(FileChannel channel, long position, long count, WritableByteChannel target)
+            throws IOException {
+        while (count > 0) {
+            long sent = channel.transferTo(position, count, target);
+            if (sent <= 0) {
+                throw new EOFException("File shrank while sending");
+            }
+            position += sent;
+            count -= sent;
+        }
+    }
+
+    /**
+     * Segment layout and hashes of a completed upload
+     */
+    public static class SegmentManifest {
+        public String fileName;
+        public long size;
+        public long lastModified;
+        public String sha256;
+        public long segmentSize;
+        public List<Segment> segments;
+
+        public SegmentManifest() {
+        }
+    }
+
+    public static class Segment {
+        public int index;
+        public long offset;
+        public long length;
+        public String sha256;
+
+        public Segment() {
+        }
+    }
 }
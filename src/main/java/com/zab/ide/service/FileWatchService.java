@@ -0,0 +1,319 @@
+package com.zab.ide.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes file-change events to browsers over Server-Sent Events.
+ * One WatchService serves every client; a directory is watched while at
+ * least one client is subscribed to it. Events are coalesced per path and
+ * flushed every DEBOUNCE_MS.
+ */
+@Service
+public class FileWatchService {
+
+    private static final long DEBOUNCE_MS = 250;
+    private static final long HEARTBEAT_SECONDS = 30;
+    private static final long EMITTER_TIMEOUT_MS = 30 * 60 * 1000L;
+
+    @Autowired
+    private FileManagementService fileManagementService;
+
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+    private final Map<Path, Integer> watchCounts = new HashMap<>();
+    private final Map<Path, WatchEvent.Kind<?>> pending = new LinkedHashMap<>();
+
+    private WatchService watchService;
+    private Thread watchThread;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "file-events");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public FileWatchService() {
+        scheduler.scheduleWithFixedDelay(this::flush, DEBOUNCE_MS, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        scheduler.shutdownNow();
+        for (Client client : clients.values()) {
+            client.emitter.complete();
+        }
+        clients.clear();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Ignore on shutdown
+            }
+        }
+    }
+
+    /**
+     * Open an event stream subscribed to the given folders.
+     * The first event ("connected") carries the clientId for later subscribe calls.
+     */
+    public SseEmitter connect(List<String> relativePaths) throws IOException {
+        Client client = new Client(UUID.randomUUID().toString(), new SseEmitter(EMITTER_TIMEOUT_MS));
+        clients.put(client.id, client);
+
+        client.emitter.onCompletion(() -> disconnect(client.id));
+        client.emitter.onTimeout(() -> disconnect(client.id));
+
+        try {
+            for (String relativePath : relativePaths) {
+                subscribe(client.id, relativePath);
+            }
+        } catch (IOException | RuntimeException e) {
+            disconnect(client.id);
+            throw e;
+        }
+
+        Map<String, Object> hello = new HashMap<String, Object>();
+        hello.put("clientId", client.id);
+        hello.put("paths", relativePaths);
+        client.emitter.send(SseEmitter.event().name("connected").data(hello));
+        return client.emitter;
+    }
+
+    /**
+     * Add a folder to a client's subscriptions
+     */
+    public synchronized void subscribe(String clientId, String relativePath) throws IOException {
+        Client client = requireClient(clientId);
+        Path dir = fileManagementService.resolvePath(relativePath);
+        if (!Files.isDirectory(dir)) {
+            throw new IOException("Path is not a directory: " + relativePath);
+        }
+        WatchKey existing = watchKeys.get(dir);
+        if (existing != null && !existing.isValid()) {
+            // The directory was deleted and recreated before the watch thread noticed
+            dropWatch(dir, existing);
+        }
+        if (!client.directories.add(dir)) {
+            return;
+        }
+
+        Integer count = watchCounts.get(dir);
+        if (count == null) {
+            WatchKey key = dir.register(watchService(),
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watchKeys.put(dir, key);
+            count = 0;
+        }
+        watchCounts.put(dir, count + 1);
+    }
+
+    /**
+     * Remove a folder from a client's subscriptions
+     */
+    public synchronized void unsubscribe(String clientId, String relativePath) throws IOException {
+        Client client = requireClient(clientId);
+        Path dir = fileManagementService.resolvePath(relativePath);
+        if (client.directories.remove(dir)) {
+            release(dir);
+        }
+    }
+
+    private synchronized void disconnect(String clientId) {
+        Client client = clients.remove(clientId);
+        if (client == null) {
+            return;
+        }
+        for (Path dir : client.directories) {
+            release(dir);
+        }
+        client.directories.clear();
+    }
+
+    private void release(Path dir) {
+        Integer count = watchCounts.get(dir);
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            watchCounts.remove(dir);
+            WatchKey key = watchKeys.remove(dir);
+            if (key != null) {
+                key.cancel();
+            }
+        } else {
+            watchCounts.put(dir, count - 1);
+        }
+    }
+
+    private Client requireClient(String clientId) throws IOException {
+        Client client = clients.get(clientId);
+        if (client == null) {
+            throw new IOException("Unknown event client: " + clientId);
+        }
+        return client;
+    }
+
+    /**
+     * Create the shared WatchService and its polling thread on first use
+     */
+    private WatchService watchService() throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            watchThread = new Thread(this::pollEvents, "file-watch");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        }
+        return watchService;
+    }
+
+    private void pollEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = (Path) key.watchable();
+            synchronized (pending) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Too many events: tell subscribers to reload the folder
+                        pending.put(dir, StandardWatchEventKinds.OVERFLOW);
+                        continue;
+                    }
+                    Path child = dir.resolve((Path) event.context());
+                    WatchEvent.Kind<?> previous = pending.get(child);
+                    if (previous == StandardWatchEventKinds.ENTRY_CREATE
+                            && event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                        // Create followed by writes is still a create
+                        continue;
+                    }
+                    pending.put(child, event.kind());
+                }
+            }
+            if (!key.reset()) {
+                // The directory is gone; forget it so a later subscribe registers afresh
+                dropWatch(dir, key);
+            }
+        }
+    }
+
+    /**
+     * Forget a directory whose watch key is no longer valid, along with
+     * every client's subscription to it
+     */
+    private synchronized void dropWatch(Path dir, WatchKey key) {
+        if (watchKeys.get(dir) != key) {
+            return;
+        }
+        watchKeys.remove(dir);
+        watchCounts.remove(dir);
+        for (Client client : clients.values()) {
+            client.directories.remove(dir);
+        }
+    }
+
+    /**
+     * Send coalesced events to clients subscribed to the affected folder
+     */
+    private void flush() {
+        List<Map.Entry<Path, WatchEvent.Kind<?>>> events;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            events = new ArrayList<>(pending.entrySet());
+            pending.clear();
+        }
+
+        Path basePath = fileManagementService.getBasePath();
+        for (Map.Entry<Path, WatchEvent.Kind<?>> entry : events) {
+            Path path = entry.getKey();
+            boolean overflow = entry.getValue() == StandardWatchEventKinds.OVERFLOW;
+            Path dir = overflow ? path : path.getParent();
+
+            Map<String, Object> data = new HashMap<String, Object>();
+            data.put("type", eventType(entry.getValue()));
+            data.put("path", basePath.relativize(path).toString().replace("\\", "/"));
+            data.put("directory", basePath.relativize(dir).toString().replace("\\", "/"));
+            data.put("timestamp", System.currentTimeMillis());
+
+            for (Client client : clients.values()) {
+                if (client.directories.contains(dir)) {
+                    send(client, "change", data);
+                }
+            }
+        }
+    }
+
+    private void heartbeat() {
+        for (Client client : clients.values()) {
+            try {
+                client.emitter.send(SseEmitter.event().comment("ping"));
+            } catch (IOException | IllegalStateException e) {
+                disconnect(client.id);
+            }
+        }
+    }
+
+    private void send(Client client, String name, Object data) {
+        try {
+            client.emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            disconnect(client.id);
+        }
+    }
+
+    private String eventType(WatchEvent.Kind<?> kind) {
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+            return "create";
+        }
+        if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+            return "delete";
+        }
+        if (kind == StandardWatchEventKinds.OVERFLOW) {
+            return "reload";
+        }
+        return "modify";
+    }
+
+    private static class Client {
+        final String id;
+        final SseEmitter emitter;
+        final Set<Path> directories = ConcurrentHashMap.newKeySet();
+
+        Client(String id, SseEmitter emitter) {
+            this.id = id;
+            this.emitter = emitter;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.zab.ide.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Windowed access to files that are too large to send in one piece
+ */
+@Service
+public class LargeFileService {
+
+    // One checkpoint every N lines keeps the index small for multi-GB files
+    private static final int LINES_PER_CHECKPOINT = 1024;
+    private static final long MAP_CHUNK = 64L * 1024 * 1024; // 64MB per mapping
+    private static final int MAX_WINDOW_LINES = 5000;
+    private static final int MAX_WINDOW_BYTES = 8 * 1024 * 1024; // 8MB per response
+    // A line longer than this (minified code, a log blob) is cut off, not buffered whole
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+    private static final int MAX_CACHED_INDEXES = 64;
+    private static final int MAX_BYTE_WINDOW = 64 * 1024;
+    private static final int BYTES_PER_ROW = 16;
+
+    @Autowired
+    private FileManagementService fileManagementService;
+
+    private final Map<Path, LineIndex> indexCache = new ConcurrentHashMap<>();
+
+    /**
+     * Read a window of lines from a text file
+     * Lines are 0-based; a window stops early if it exceeds MAX_WINDOW_BYTES.
+     * Lines over MAX_LINE_BYTES are cut off and listed in truncatedLines.
+     */
+    public Map<String, Object> readLines(String relativePath, long startLine, int count) throws IOException {
+        Path filePath = fileManagementService.resolvePath(relativePath);
+
+        if (!Files.exists(filePath)) {
+            throw new IOException("File does not exist: " + relativePath);
+        }
+
+        if (Files.isDirectory(filePath)) {
+            throw new IOException("Cannot read directory as file: " + relativePath);
+        }
+
+        if (startLine < 0) {
+            throw new IOException("Start line must not be negative");
+        }
+
+        int maxLines = Math.max(1, Math.min(count, MAX_WINDOW_LINES));
+        LineIndex index = getLineIndex(filePath);
+
+        List<String> lines = new ArrayList<>();
+        List<Long> truncatedLines = new ArrayList<>();
+        long nextOffset = index.size;
+
+        if (startLine < index.totalLines) {
+            int checkpoint = (int) (startLine / LINES_PER_CHECKPOINT);
+            long line = (long) checkpoint * LINES_PER_CHECKPOINT;
+            long position = index.offsets[checkpoint];
+
+            try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+                ByteArrayOutputStream current = new ByteArrayOutputStream();
+                int windowBytes = 0;
+
+                scan:
+                while (position < index.size) {
+                    long length = Math.min(MAP_CHUNK, index.size - position);
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                    while (buffer.hasRemaining()) {
+                        byte b = buffer.get();
+                        position++;
+
+                        if (line >= startLine && b != '\n') {
+                            if (current.size() < MAX_LINE_BYTES) {
+                                current.write(b);
+                            } else if (truncatedLines.isEmpty()
+                                    || truncatedLines.get(truncatedLines.size() - 1) != line) {
+                                truncatedLines.add(line);
+                            }
+                        }
+
+                        if (b == '\n') {
+                            if (line >= startLine) {
+                                windowBytes += current.size();
+                                lines.add(decodeLine(current));
+                                current.reset();
+                                if (lines.size() >= maxLines || windowBytes >= MAX_WINDOW_BYTES) {
+                                    nextOffset = position;
+                                    break scan;
+                                }
+                            }
+                            line++;
+                        }
+                    }
+                }
+
+                // Last line without a trailing newline
+                if (position >= index.size && line >= startLine && current.size() > 0) {
+                    lines.add(decodeLine(current));
+                }
+            }
+        }
+
+        long endLine = startLine + lines.size();
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("path", relativePath);
+        result.put("startLine", startLine);
+        result.put("endLine", endLine);
+        result.put("lines", lines);
+        result.put("truncatedLines", truncatedLines);
+        result.put("totalLines", index.totalLines);
+        result.put("size", index.size);
+        result.put("eof", endLine >= index.totalLines || nextOffset >= index.size);
+        return result;
+    }
+
+    /**
+     * Hex view of a byte window: rows of BYTES_PER_ROW bytes with their
+     * offset, hex and printable ASCII, plus the sniffed content type
+     */
+    public Map<String, Object> readHex(String relativePath, long offset, int length) throws IOException {
+        Path filePath = resolveFile(relativePath);
+        long size = Files.size(filePath);
+        byte[] bytes = readWindow(filePath, size, offset, length);
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        StringBuilder hex = new StringBuilder(BYTES_PER_ROW * 3);
+        StringBuilder text = new StringBuilder(BYTES_PER_ROW);
+        for (int row = 0; row < bytes.length; row += BYTES_PER_ROW) {
+            hex.setLength(0);
+            text.setLength(0);
+            int end = Math.min(row + BYTES_PER_ROW, bytes.length);
+            for (int i = row; i < end; i++) {
+                int b = bytes[i] & 0xFF;
+                if (i > row) {
+                    hex.append(' ');
+                }
+                hex.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xF, 16));
+                text.append(b >= 0x20 && b < 0x7F ? (char) b : '.');
+            }
+            Map<String, Object> line = new HashMap<String, Object>();
+            line.put("offset", offset + row);
+            line.put("hex", hex.toString());
+            line.put("text", text.toString());
+            rows.add(line);
+        }
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("path", relativePath);
+        result.put("offset", offset);
+        result.put("length", bytes.length);
+        result.put("size", size);
+        result.put("contentType", ContentSniffer.sniff(filePath));
+        result.put("rows", rows);
+        result.put("eof", offset + bytes.length >= size);
+        return result;
+    }
+
+    /**
+     * Raw bytes of a window, for clients that render the dump themselves
+     */
+    public byte[] readBytes(String relativePath, long offset, int length) throws IOException {
+        Path filePath = resolveFile(relativePath);
+        return readWindow(filePath, Files.size(filePath), offset, length);
+    }
+
+    /**
+     * Content type sniffed from the file's magic bytes
+     */
+    public String sniffContentType(String relativePath) throws IOException {
+        return ContentSniffer.sniff(resolveFile(relativePath));
+    }
+
+    /**
+     * Copy at most MAX_BYTE_WINDOW bytes out of a read-only mapping of the window
+     */
+    private byte[] readWindow(Path filePath, long size, long offset, int length) throws IOException {
+        if (offset < 0) {
+            throw new IOException("Offset must not be negative");
+        }
+        if (offset >= size) {
+            return new byte[0];
+        }
+        int count = (int) Math.min(Math.max(1, Math.min(length, MAX_BYTE_WINDOW)), size - offset);
+        byte[] bytes = new byte[count];
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, count);
+            buffer.get(bytes);
+        }
+        return bytes;
+    }
+
+    private Path resolveFile(String relativePath) throws IOException {
+        Path filePath = fileManagementService.resolvePath(relativePath);
+
+        if (!Files.exists(filePath)) {
+            throw new IOException("File does not exist: " + relativePath);
+        }
+
+        if (Files.isDirectory(filePath)) {
+            throw new IOException("Cannot read directory as file: " + relativePath);
+        }
+        return filePath;
+    }
+
+    /**
+     * Decode one line, dropping a trailing CR from CRLF files
+     */
+    private String decodeLine(ByteArrayOutputStream bytes) {
+        String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        if (text.endsWith("\r")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return text;
+    }
+
+    /**
+     * Get the line index for a file, rebuilding it when size or mtime changed
+     */
+    private LineIndex getLineIndex(Path filePath) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+
+        LineIndex cached = indexCache.get(filePath);
+        if (cached != null && cached.size == size && cached.lastModified == modified) {
+            return cached;
+        }
+
+        LineIndex index = buildLineIndex(filePath, size, modified);
+        if (indexCache.size() >= MAX_CACHED_INDEXES) {
+            indexCache.clear();
+        }
+        indexCache.put(filePath, index);
+        return index;
+    }
+
+    /**
+     * Scan the file once through memory-mapped chunks, recording the byte
+     * offset of every LINES_PER_CHECKPOINT-th line
+     */
+    private LineIndex buildLineIndex(Path filePath, long size, long modified) throws IOException {
+        long[] offsets = new long[16];
+        int checkpoints = 1; // line 0 starts at offset 0
+        long lines = 0;
+        byte last = '\n';
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(MAP_CHUNK, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                for (int i = 0; i < length; i++) {
+                    last = buffer.get(i);
+                    if (last == '\n') {
+                        lines++;
+                        if (lines % LINES_PER_CHECKPOINT == 0) {
+                            if (checkpoints == offsets.length) {
+                                offsets = Arrays.copyOf(offsets, checkpoints * 2);
+                            }
+                            offsets[checkpoints++] = position + i + 1;
+                        }
+                    }
+                }
+                position += length;
+            }
+        }
+
+        // A final line without a trailing newline still counts
+        if (size > 0 && last != '\n') {
+            lines++;
+        }
+
+        return new LineIndex(size, modified, lines, Arrays.copyOf(offsets, checkpoints));
+    }
+
+    /**
+     * Sparse line-offset index: offsets[i] is where line i * LINES_PER_CHECKPOINT starts
+     */
+    private static class LineIndex {
+        final long size;
+        final long lastModified;
+        final long totalLines;
+        final long[] offsets;
+
+        LineIndex(long size, long lastModified, long totalLines, long[] offsets) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.totalLines = totalLines;
+            this.offsets = offsets;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.zab.ide.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Line-based unified diff.
+ * Common leading and trailing lines are trimmed first; the remaining middle
+ * is diffed with an LCS table when it is small enough, otherwise it is shown
+ * as one replaced block.
+ */
+final class LineDiff {
+
+    private static final int CONTEXT = 3;
+    private static final long MAX_TABLE_CELLS = 4_000_000L;
+
+    private LineDiff() {
+    }
+
+    static String unified(String fromName, String toName, String fromText, String toText) {
+        String[] a = split(fromText);
+        String[] b = split(toText);
+        StringBuilder ops = new StringBuilder();
+        List<String> lines = new ArrayList<>();
+        editScript(a, b, ops, lines);
+
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+        int aLine = 0;
+        int bLine = 0;
+        while (i < ops.length()) {
+            // Skip to the next change
+            if (ops.charAt(i) == ' ') {
+                i++;
+                aLine++;
+                bLine++;
+                continue;
+            }
+            if (out.length() == 0) {
+                out.append("--- ").append(fromName).append('\n');
+                out.append("+++ ").append(toName).append('\n');
+            }
+
+            int start = Math.max(0, i - CONTEXT);
+            int hunkA = aLine - (i - start);
+            int hunkB = bLine - (i - start);
+
+            // Extend the hunk while changes are at most 2 * CONTEXT lines apart
+            int end = i;
+            int lastChange = i;
+            while (end < ops.length() && end - lastChange <= 2 * CONTEXT) {
+                if (ops.charAt(end) != ' ') {
+                    lastChange = end;
+                }
+                end++;
+            }
+            end = Math.min(ops.length(), lastChange + CONTEXT + 1);
+
+            int countA = 0;
+            int countB = 0;
+            StringBuilder body = new StringBuilder();
+            for (int k = start; k < end; k++) {
+                char op = ops.charAt(k);
+                body.append(op).append(lines.get(k)).append('\n');
+                if (op != '+') {
+                    countA++;
+                }
+                if (op != '-') {
+                    countB++;
+                }
+            }
+            out.append("@@ -").append(countA == 0 ? hunkA : hunkA + 1).append(',').append(countA)
+                    .append(" +").append(countB == 0 ? hunkB : hunkB + 1).append(',').append(countB)
+                    .append(" @@\n").append(body);
+
+            for (int k = i; k < end; k++) {
+                char op = ops.charAt(k);
+                if (op != '+') {
+                    aLine++;
+                }
+                if (op != '-') {
+                    bLine++;
+                }
+            }
+            i = end;
+        }
+        return out.toString();
+    }
+
+    private static void editScript(String[] a, String[] b, StringBuilder ops, List<String> lines) {
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix].equals(b[prefix])) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix].equals(b[b.length - 1 - suffix])) {
+            suffix++;
+        }
+
+        for (int k = 0; k < prefix; k++) {
+            add(ops, lines, ' ', a[k]);
+        }
+
+        int n = a.length - prefix - suffix;
+        int m = b.length - prefix - suffix;
+        if ((long) (n + 1) * (m + 1) <= MAX_TABLE_CELLS) {
+            // lcs[i][j] = LCS length of a[prefix+i..] and b[prefix+j..]
+            int[][] lcs = new int[n + 1][m + 1];
+            for (int i = n - 1; i >= 0; i--) {
+                for (int j = m - 1; j >= 0; j--) {
+                    lcs[i][j] = a[prefix + i].equals(b[prefix + j])
+                            ? lcs[i + 1][j + 1] + 1
+                            : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+                }
+            }
+            int i = 0;
+            int j = 0;
+            while (i < n && j < m) {
+                if (a[prefix + i].equals(b[prefix + j])) {
+                    add(ops, lines, ' ', a[prefix + i]);
+                    i++;
+                    j++;
+                } else if (lcs[i + 1][j] >= lcs[i][j + 1]) {
+                    add(ops, lines, '-', a[prefix + i++]);
+                } else {
+                    add(ops, lines, '+', b[prefix + j++]);
+                }
+            }
+            while (i < n) {
+                add(ops, lines, '-', a[prefix + i++]);
+            }
+            while (j < m) {
+                add(ops, lines, '+', b[prefix + j++]);
+            }
+        } else {
+            for (int k = 0; k < n; k++) {
+                add(ops, lines, '-', a[prefix + k]);
+            }
+            for (int k = 0; k < m; k++) {
+                add(ops, lines, '+', b[prefix + k]);
+            }
+        }
+
+        for (int k = a.length - suffix; k < a.length; k++) {
+            add(ops, lines, ' ', a[k]);
+        }
+    }
+
+    private static void add(StringBuilder ops, List<String> lines, char op, String line) {
+        ops.append(op);
+        lines.add(line);
+    }
+
+    private static String[] split(String text) {
+        if (text.isEmpty()) {
+            return new String[0];
+        }
+        String[] lines = text.split("\r?\n", -1);
+        // A trailing newline does not start another line
+        if (lines[lines.length - 1].isEmpty()) {
+            String[] trimmed = new String[lines.length - 1];
+            System.arraycopy(lines, 0, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+        return lines;
+    }
+}
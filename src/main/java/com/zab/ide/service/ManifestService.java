@@ -0,0 +1,260 @@
+package com.zab.ide.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * SHA-256 manifest of the deployed webapp.
+ * Hashes are cached by (path, size, mtime) and persisted, so after the
+ * first run only new or changed files are read again.
+ */
+@Service
+public class ManifestService {
+
+    private static final String DATA_DIR = "zabide";
+    private static final String CACHE_FILE = "hash-cache.tsv";
+
+    private static final ForkJoinPool HASH_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    @Autowired
+    private FileManagementService fileManagementService;
+
+    // relative path -> cached hash
+    private final Map<String, ManifestEntry> hashCache = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        try {
+            loadCache();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[MANIFEST] Could not load hash cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Build the manifest of every file under a folder, sorted by path
+     */
+    public List<ManifestEntry> buildManifest(String relativePath) throws IOException {
+        Path root = fileManagementService.resolvePath(relativePath);
+        if (!Files.isDirectory(root)) {
+            throw new IOException("Path is not a directory: " + relativePath);
+        }
+
+        Path basePath = fileManagementService.getBasePath();
+        List<ManifestEntry> candidates = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    ManifestEntry entry = new ManifestEntry();
+                    entry.path = basePath.relativize(file).toString().replace("\\", "/");
+                    entry.size = attrs.size();
+                    entry.lastModified = attrs.lastModifiedTime().toMillis();
+                    candidates.add(entry);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        List<ManifestEntry> manifest;
+        try {
+            manifest = HASH_POOL.submit(() -> candidates.parallelStream()
+                    .map(entry -> withHash(basePath, entry))
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Manifest build interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+
+        // Drop cached hashes of files that no longer exist under this root
+        String prefix = relativePath.isEmpty() ? "" : basePath.relativize(root).toString().replace("\\", "/") + "/";
+        Map<String, Boolean> present = new HashMap<>();
+        for (ManifestEntry entry : manifest) {
+            present.put(entry.path, Boolean.TRUE);
+        }
+        hashCache.keySet().removeIf(path -> path.startsWith(prefix) && !present.containsKey(path));
+
+        manifest.sort((a, b) -> a.path.compareTo(b.path));
+        saveCache();
+        return manifest;
+    }
+
+    /**
+     * Compare the local manifest with one from another server.
+     * Paths are relative to the webapp root on both sides.
+     */
+    public Map<String, Object> diff(String relativePath, List<ManifestEntry> other) throws IOException {
+        Map<String, ManifestEntry> local = new HashMap<>();
+        for (ManifestEntry entry : buildManifest(relativePath)) {
+            local.put(entry.path, entry);
+        }
+
+        List<String> onlyRemote = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        Map<String, Boolean> seen = new HashMap<>();
+        for (ManifestEntry entry : other) {
+            seen.put(entry.path, Boolean.TRUE);
+            ManifestEntry mine = local.get(entry.path);
+            if (mine == null) {
+                onlyRemote.add(entry.path);
+            } else if (entry.sha256 == null || !entry.sha256.equalsIgnoreCase(mine.sha256)) {
+                changed.add(entry.path);
+            }
+        }
+
+        List<String> onlyLocal = new ArrayList<>();
+        for (String path : local.keySet()) {
+            if (!seen.containsKey(path)) {
+                onlyLocal.add(path);
+            }
+        }
+        onlyLocal.sort(null);
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("onlyLocal", onlyLocal);
+        result.put("onlyRemote", onlyRemote);
+        result.put("changed", changed);
+        result.put("identical", onlyLocal.isEmpty() && onlyRemote.isEmpty() && changed.isEmpty());
+        return result;
+    }
+
+    /**
+     * Fill in the hash from the cache when size and mtime match, otherwise read the file
+     */
+    private ManifestEntry withHash(Path basePath, ManifestEntry entry) {
+        ManifestEntry cached = hashCache.get(entry.path);
+        if (cached != null && cached.size == entry.size && cached.lastModified == entry.lastModified) {
+            entry.sha256 = cached.sha256;
+            return entry;
+        }
+        try {
+            entry.sha256 = sha256(basePath.resolve(entry.path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Cache a copy so callers cannot alter cached hashes
+        ManifestEntry copy = new ManifestEntry();
+        copy.path = entry.path;
+        copy.size = entry.size;
+        copy.lastModified = entry.lastModified;
+        copy.sha256 = entry.sha256;
+        hashCache.put(copy.path, copy);
+        return entry;
+    }
+
+    /**
+     * SHA-256 (hex) of a file, streamed in 64KB blocks
+     */
+    static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private Path getCacheFile() {
+        String catalinaHome = System.getProperty("catalina.home");
+        return Paths.get(catalinaHome, DATA_DIR, CACHE_FILE);
+    }
+
+    private void loadCache() throws IOException {
+        Path cacheFile = getCacheFile();
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length == 4) {
+                    ManifestEntry entry = new ManifestEntry();
+                    entry.size = Long.parseLong(parts[0]);
+                    entry.lastModified = Long.parseLong(parts[1]);
+                    entry.sha256 = parts[2];
+                    entry.path = parts[3];
+                    hashCache.put(entry.path, entry);
+                }
+            }
+        }
+    }
+
+    private synchronized void saveCache() throws IOException {
+        Path cacheFile = getCacheFile();
+        Files.createDirectories(cacheFile.getParent());
+        Path temp = cacheFile.resolveSibling(CACHE_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (ManifestEntry entry : hashCache.values()) {
+                writer.write(entry.size + "\t" + entry.lastModified + "\t" + entry.sha256 + "\t" + entry.path);
+                writer.newLine();
+            }
+        }
+        Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * One file in a manifest
+     */
+    public static class ManifestEntry {
+        public String path;
+        public long size;
+        public long lastModified;
+        public String sha256;
+
+        public ManifestEntry() {
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package com.zab.ide.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Background symbol index over the webapp sources for go-to-definition and
+ * find-references. Each file is tokenized once by a small per-language
+ * scanner (Java, JS, JSP, SQL); lookups read name to file postings and only
+ * touch the files that contain the name. Compiled classes under
+ * WEB-INF/classes are indexed by file name only.
+ */
+@Service
+public class SymbolIndexService implements FileChangeListener {
+
+    private static final long MAX_FILE_SIZE = 2 * 1024 * 1024; // skip huge generated files
+    private static final int MAX_RESULTS = 500;
+    private static final int INDEX_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+
+    private static final Pattern JAVA_TYPE = Pattern.compile("\\b(class|interface|enum)\\s+([A-Za-z_$][\\w$]*)");
+    private static final Pattern JAVA_METHOD = Pattern.compile(
+            "\\b(?:public|protected|private|static|final|synchronized|abstract|native)\\s+"
+                    + "[\\w$<>\\[\\],.? ]+?\\s+([A-Za-z_$][\\w$]*)\\s*\\(");
+
+    private static final Pattern JS_FUNCTION = Pattern.compile("\\bfunction\\s*\\*?\\s+([A-Za-z_$][\\w$]*)");
+    private static final Pattern JS_ASSIGNED_FUNCTION = Pattern.compile(
+            "\\b(?:var|let|const)?\\s*([A-Za-z_$][\\w$]*)\\s*[:=]\\s*(?:async\\s+)?(?:function\\b|\\([^()]*\\)\\s*=>)");
+    private static final Pattern JS_CLASS = Pattern.compile("\\bclass\\s+([A-Za-z_$][\\w$]*)");
+
+    private static final Pattern JSP_INCLUDE = Pattern.compile(
+            "(?:<%@\\s*include\\s+file|<jsp:include\\s+page)\\s*=\\s*\"([^\"]+)\"", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SQL_OBJECT = Pattern.compile(
+            "\\bcreate\\s+(?:or\\s+(?:alter|replace)\\s+)?(procedure|proc|function|table|view|trigger)\\s+([\\[\\]\\w.]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+            "abstract", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue",
+            "default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for", "function",
+            "if", "implements", "import", "instanceof", "int", "interface", "let", "long", "new", "null",
+            "package", "private", "protected", "public", "return", "short", "static", "super", "switch", "this",
+            "throw", "throws", "true", "false", "try", "typeof", "var", "void", "while", "select", "from",
+            "where", "and", "or", "not", "insert", "update", "delete", "into", "values", "set", "begin", "end",
+            "declare", "as", "on", "join", "left", "right", "inner", "outer", "order", "by", "group", "having",
+            "create", "alter", "drop", "table", "procedure", "proc", "exec", "go", "is"));
+
+    @Autowired
+    private FileManagementService fileManagementService;
+
+    // relative path -> symbols of that file
+    private final Map<String, FileSymbols> files = new ConcurrentHashMap<>();
+    // lower-case name -> files defining / mentioning it
+    private final Map<String, Set<String>> definitions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> references = new ConcurrentHashMap<>();
+
+    private final AtomicLong indexedFiles = new AtomicLong();
+    private final AtomicBoolean indexing = new AtomicBoolean();
+    private volatile long lastFullIndex;
+
+    private final ExecutorService indexer = Executors.newFixedThreadPool(INDEX_THREADS, r -> {
+        Thread t = new Thread(r, "symbol-index");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    @PostConstruct
+    public void init() {
+        fileManagementService.addChangeListener(this);
+        indexer.submit(this::reindexAll);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexer.shutdownNow();
+    }
+
+    /**
+     * Walk the whole webapp and rebuild the index in the background
+     */
+    public void reindexAll() {
+        // Claimed atomically, so two triggers never run full walks side by side
+        if (!indexing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Path basePath = fileManagementService.getBasePath();
+            if (!Files.isDirectory(basePath)) {
+                return;
+            }
+            Set<String> seen = ConcurrentHashMap.newKeySet();
+            indexTree(basePath, seen);
+            for (String path : new ArrayList<>(files.keySet())) {
+                if (!seen.contains(path)) {
+                    removeFile(path);
+                }
+            }
+            lastFullIndex = System.currentTimeMillis();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[SYMBOLS] Indexing failed: " + e.getMessage());
+        } finally {
+            indexing.set(false);
+        }
+    }
+
+    /**
+     * Queue a full reindex (for changes made outside the file manager)
+     */
+    public void requestReindex() {
+        indexer.submit(this::reindexAll);
+    }
+
+    @Override
+    public void pathChanged(Path path) {
+        indexer.submit(() -> {
+            try {
+                String relative = relativize(path);
+                if (Files.isDirectory(path)) {
+                    indexTree(path, null);
+                } else if (Files.isRegularFile(path)) {
+                    indexFile(path, Files.readAttributes(path, BasicFileAttributes.class));
+                } else {
+                    // Deleted: drop the file or everything under the folder
+                    String prefix = relative + "/";
+                    for (String file : new ArrayList<>(files.keySet())) {
+                        if (file.equals(relative) || file.startsWith(prefix)) {
+                            removeFile(file);
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("[SYMBOLS] Could not update " + path + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Where a name is defined
+     */
+    public List<Map<String, Object>> findDefinitions(String name) {
+        String key = name.toLowerCase();
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+        Set<String> paths = definitions.get(key);
+        if (paths == null) {
+            return results;
+        }
+        for (String path : paths) {
+            FileSymbols symbols = files.get(path);
+            if (symbols == null) {
+                continue;
+            }
+            for (Symbol symbol : symbols.definitions) {
+                if (symbol.name.equalsIgnoreCase(name)) {
+                    results.add(symbol.toMap(path));
+                    if (results.size() >= MAX_RESULTS) {
+                        return results;
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Every line that mentions a name
+     */
+    public List<Map<String, Object>> findReferences(String name, int limit) {
+        String key = name.toLowerCase();
+        int max = limit > 0 ? Math.min(limit, MAX_RESULTS) : MAX_RESULTS;
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+        Set<String> paths = references.get(key);
+        if (paths == null) {
+            return results;
+        }
+        for (String path : paths) {
+            FileSymbols symbols = files.get(path);
+            int[] lines = symbols != null ? symbols.references.get(key) : null;
+            if (lines == null) {
+                continue;
+            }
+            for (int line : lines) {
+                Map<String, Object> ref = new HashMap<String, Object>();
+                ref.put("name", name);
+                ref.put("path", path);
+                ref.put("line", line);
+                results.add(ref);
+                if (results.size() >= max) {
+                    return results;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Indexer state
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<String, Object>();
+        status.put("indexing", indexing.get());
+        status.put("files", files.size());
+        status.put("names", definitions.size());
+        status.put("indexedTotal", indexedFiles.get());
+        status.put("lastFullIndex", lastFullIndex);
+        return status;
+    }
+
+    private void indexTree(Path root, Set<String> seen) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                // Jars and their unpacked caches are not sources
+                String name = dir.getFileName() != null ? dir.getFileName().toString() : "";
+                if (name.equals("lib") && dir.getParent() != null
+                        && "WEB-INF".equals(String.valueOf(dir.getParent().getFileName()))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (languageOf(file) != null) {
+                    if (seen != null) {
+                        seen.add(relativize(file));
+                    }
+                    try {
+                        indexFile(file, attrs);
+                    } catch (IOException e) {
+                        // Unreadable file; skip it
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void indexFile(Path file, BasicFileAttributes attrs) throws IOException {
+        String language = languageOf(file);
+        if (language == null || attrs.size() > MAX_FILE_SIZE) {
+            return;
+        }
+
+        String path = relativize(file);
+        FileSymbols existing = files.get(path);
+        long modified = attrs.lastModifiedTime().toMillis();
+        if (existing != null && existing.lastModified == modified && existing.size == attrs.size()) {
+            return;
+        }
+
+        FileSymbols symbols;
+        if (language.equals("class")) {
+            // Compiled classes: the file name is the definition, contents are not read
+            String name = file.getFileName().toString();
+            name = name.substring(name.lastIndexOf('$') + 1, name.length() - ".class".length());
+            symbols = new FileSymbols();
+            symbols.definitions.add(new Symbol(name, "class", 1));
+        } else {
+            String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            symbols = tokenize(text, language);
+        }
+        symbols.lastModified = modified;
+        symbols.size = attrs.size();
+
+        synchronized (this) {
+            removeFile(path);
+            files.put(path, symbols);
+            for (Symbol symbol : symbols.definitions) {
+                definitions.computeIfAbsent(symbol.name.toLowerCase(), k -> ConcurrentHashMap.newKeySet()).add(path);
+            }
+            for (String name : symbols.references.keySet()) {
+                references.computeIfAbsent(name, k -> ConcurrentHashMap.newKeySet()).add(path);
+            }
+        }
+        indexedFiles.incrementAndGet();
+    }
+
+    private synchronized void removeFile(String path) {
+        FileSymbols old = files.remove(path);
+        if (old == null) {
+            return;
+        }
+        for (Symbol symbol : old.definitions) {
+            removePosting(definitions, symbol.name.toLowerCase(), path);
+        }
+        for (String name : old.references.keySet()) {
+            removePosting(references, name, path);
+        }
+    }
+
+    private void removePosting(Map<String, Set<String>> postings, String key, String path) {
+        Set<String> paths = postings.get(key);
+        if (paths != null) {
+            paths.remove(path);
+            if (paths.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Scan a file line by line for definitions and identifier occurrences
+     */
+    private FileSymbols tokenize(String text, String language) {
+        FileSymbols symbols = new FileSymbols();
+        Map<String, List<Integer>> refLines = new HashMap<>();
+
+        String[] lines = text.split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            int lineNumber = i + 1;
+
+            switch (language) {
+                case "java":
+                    addMatches(symbols, JAVA_TYPE, line, 2, lineNumber, "type");
+                    addMatches(symbols, JAVA_METHOD, line, 1, lineNumber, "method");
+                    break;
+                case "js":
+                    addJsDefinitions(symbols, line, lineNumber);
+                    break;
+                case "jsp":
+                    addJsDefinitions(symbols, line, lineNumber);
+                    addMatches(symbols, JAVA_METHOD, line, 1, lineNumber, "method");
+                    addIncludes(refLines, line, lineNumber);
+                    break;
+                case "sql":
+                    addSqlDefinitions(symbols, line, lineNumber);
+                    break;
+                default:
+                    break;
+            }
+
+            Matcher m = IDENTIFIER.matcher(line);
+            while (m.find()) {
+                String name = m.group();
+                if (name.length() < 3 || KEYWORDS.contains(name.toLowerCase())) {
+                    continue;
+                }
+                List<Integer> list = refLines.computeIfAbsent(name.toLowerCase(), k -> new ArrayList<>());
+                if (list.isEmpty() || list.get(list.size() - 1) != lineNumber) {
+                    list.add(lineNumber);
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<Integer>> e : refLines.entrySet()) {
+            List<Integer> list = e.getValue();
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+            symbols.references.put(e.getKey(), array);
+        }
+        return symbols;
+    }
+
+    private void addJsDefinitions(FileSymbols symbols, String line, int lineNumber) {
+        addMatches(symbols, JS_FUNCTION, line, 1, lineNumber, "function");
+        addMatches(symbols, JS_ASSIGNED_FUNCTION, line, 1, lineNumber, "function");
+        addMatches(symbols, JS_CLASS, line, 1, lineNumber, "class");
+    }
+
+    private void addSqlDefinitions(FileSymbols symbols, String line, int lineNumber) {
+        Matcher m = SQL_OBJECT.matcher(line);
+        while (m.find()) {
+            // [dbo].[MyProc] -> MyProc
+            String name = m.group(2).replace("[", "").replace("]", "");
+            int dot = name.lastIndexOf('.');
+            if (dot >= 0) {
+                name = name.substring(dot + 1);
+            }
+            symbols.definitions.add(new Symbol(name, m.group(1).toLowerCase(), lineNumber));
+        }
+    }
+
+    /**
+     * JSP includes are recorded as references to the included file name
+     */
+    private void addIncludes(Map<String, List<Integer>> refLines, String line, int lineNumber) {
+        Matcher m = JSP_INCLUDE.matcher(line);
+        while (m.find()) {
+            String target = m.group(1);
+            String name = target.substring(target.lastIndexOf('/') + 1).toLowerCase();
+            refLines.computeIfAbsent(name, k -> new ArrayList<>()).add(lineNumber);
+        }
+    }
+
+    private void addMatches(FileSymbols symbols, Pattern pattern, String line, int group, int lineNumber,
+            String kind) {
+        Matcher m = pattern.matcher(line);
+        while (m.find()) {
+            String name = m.group(group);
+            if (!KEYWORDS.contains(name.toLowerCase())) {
+                symbols.definitions.add(new Symbol(name, kind, lineNumber));
+            }
+        }
+    }
+
+    private String languageOf(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".java")) {
+            return "java";
+        }
+        if (name.endsWith(".js") && !name.endsWith(".min.js")) {
+            return "js";
+        }
+        if (name.endsWith(".jsp") || name.endsWith(".jspf") || name.endsWith(".jspx")) {
+            return "jsp";
+        }
+        if (name.endsWith(".sql")) {
+            return "sql";
+        }
+        if (name.endsWith(".class")) {
+            return "class";
+        }
+        return null;
+    }
+
+    private String relativize(Path path) {
+        return fileManagementService.getBasePath().relativize(path).toString().replace("\\", "/");
+    }
+
+    private static class FileSymbols {
+        long lastModified;
+        long size;
+        final List<Symbol> definitions = new ArrayList<>();
+        // lower-case name -> line numbers
+        final Map<String, int[]> references = new HashMap<>();
+    }
+
+    private static class Symbol {
+        final String name;
+        final String kind;
+        final int line;
+
+        Symbol(String name, String kind, int line) {
+            this.name = name;
+            this.kind = kind;
+            this.line = line;
+        }
+
+        Map<String, Object> toMap(String path) {
+            Map<String, Object> map = new HashMap<String, Object>();
+            map.put("name", name);
+            map.put("kind", kind);
+            map.put("path", path);
+            map.put("line", line);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.zab.ide.service;
+
+import com.zab.ide.service.ManifestService.ManifestEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Manifest-driven delta sync of webapp files.
+ * The client posts its manifest and gets back the files the server is
+ * missing or has stale; it then uploads only those as one ZIP stream.
+ * The upload is staged and verified before anything under the webapp is
+ * touched, and the apply step rolls back if any move fails.
+ */
+@Service
+public class SyncService {
+
+    private static final long PLAN_TTL = 30 * 60 * 1000L;
+
+    @Autowired
+    private FileManagementService fileManagementService;
+
+    @Autowired
+    private ManifestService manifestService;
+
+    private final Map<String, SyncPlan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * Compare the client's manifest with a folder and record what must change.
+     * Paths are relative to the webapp root, as in GET /file/manifest.
+     * An empty manifest is refused: it would plan to delete the whole folder.
+     */
+    public SyncPlan plan(String relativePath, List<ManifestEntry> clientManifest) throws IOException {
+        expirePlans();
+        if (clientManifest == null || clientManifest.isEmpty()) {
+            throw new IOException("Client manifest is empty");
+        }
+
+        Path root = fileManagementService.resolvePath(relativePath);
+        Map<String, String> wanted = new LinkedHashMap<>();
+        for (ManifestEntry entry : clientManifest) {
+            if (entry.path == null || entry.sha256 == null) {
+                throw new IOException("Manifest entries need path and sha256");
+            }
+            Path target = fileManagementService.resolvePath(entry.path);
+            if (!target.startsWith(root) || target.equals(root)) {
+                throw new SecurityException("Access denied: " + entry.path + " is outside the sync folder");
+            }
+            wanted.put(normalize(target), entry.sha256.toLowerCase());
+        }
+
+        Map<String, String> current = new HashMap<>();
+        if (Files.isDirectory(root)) {
+            for (ManifestEntry entry : manifestService.buildManifest(relativePath)) {
+                current.put(entry.path, entry.sha256);
+            }
+        }
+
+        SyncPlan plan = new SyncPlan();
+        plan.syncId = UUID.randomUUID().toString();
+        plan.path = relativePath;
+        plan.createdTime = System.currentTimeMillis();
+        for (Map.Entry<String, String> entry : wanted.entrySet()) {
+            if (!entry.getValue().equals(current.get(entry.getKey()))) {
+                plan.upload.add(entry.getKey());
+                plan.expected.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String path : current.keySet()) {
+            if (!wanted.containsKey(path)) {
+                plan.delete.add(path);
+            }
+        }
+        plan.delete.sort(null);
+
+        plans.put(plan.syncId, plan);
+        return plan;
+    }
+
+    /**
+     * Receive the ZIP of planned files, verify every hash, then apply the
+     * whole change set. Nothing under the webapp changes unless every file
+     * arrived intact.
+     */
+    public SyncResult apply(String syncId, InputStream zipStream) throws IOException {
+        SyncPlan plan = plans.remove(syncId);
+        if (plan == null) {
+            throw new IOException("Unknown or expired sync: " + syncId);
+        }
+
+        String catalinaHome = System.getProperty("catalina.home");
+        Path workDir = Paths.get(catalinaHome, "temp", "zabide-sync", syncId);
+        Path stagingDir = workDir.resolve("files");
+        Path backupDir = workDir.resolve("backup");
+        Files.createDirectories(stagingDir);
+
+        SyncResult result = new SyncResult();
+        result.syncId = syncId;
+        result.startTime = System.currentTimeMillis();
+        try {
+            result.bytes = stage(plan, zipStream, stagingDir);
+            synchronized (this) {
+                swapIn(plan, stagingDir, backupDir);
+            }
+            result.uploaded = plan.upload.size();
+            result.deleted = plan.delete.size();
+        } finally {
+            purge(workDir);
+        }
+        result.endTime = System.currentTimeMillis();
+        return result;
+    }
+
+    /**
+     * Write every ZIP entry to the staging folder, hashing as it streams
+     */
+    private long stage(SyncPlan plan, InputStream zipStream, Path stagingDir) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+
+        Map<String, Boolean> received = new HashMap<>();
+        long bytes = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (ZipInputStream zis = new ZipInputStream(zipStream)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String name = entry.getName().replace("\\", "/");
+                String expected = plan.expected.get(name);
+                if (expected == null) {
+                    throw new SecurityException("Access denied: " + name + " is not part of this sync");
+                }
+
+                Path staged = stagingDir.resolve(name).normalize();
+                Files.createDirectories(staged.getParent());
+                digest.reset();
+                try (OutputStream out = new DigestOutputStream(Files.newOutputStream(staged), digest)) {
+                    int read;
+                    while ((read = zis.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                        bytes += read;
+                    }
+                }
+                String actual = ManifestService.toHex(digest.digest());
+                if (!actual.equals(expected)) {
+                    throw new IOException("Hash mismatch for " + name);
+                }
+                received.put(name, Boolean.TRUE);
+            }
+        }
+
+        for (String path : plan.upload) {
+            if (!received.containsKey(path)) {
+                throw new IOException("Missing file in sync upload: " + path);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Move staged files into place and removed files out, keeping the old
+     * versions in the backup folder until every move has succeeded
+     */
+    private void swapIn(SyncPlan plan, Path stagingDir, Path backupDir) throws IOException {
+        Path basePath = fileManagementService.getBasePath();
+        Deque<String[]> undoLog = new ArrayDeque<>();
+        try {
+            for (String path : plan.upload) {
+                Path target = basePath.resolve(path);
+                Path backup = null;
+                if (Files.exists(target)) {
+                    fileManagementService.notifyBeforeChange(target, "sync");
+                    backup = backupDir.resolve(path);
+                    move(target, backup);
+                }
+                undoLog.push(new String[] { path, backup != null ? backup.toString() : null });
+                move(stagingDir.resolve(path), target);
+            }
+            for (String path : plan.delete) {
+                Path target = basePath.resolve(path);
+                if (Files.exists(target)) {
+                    fileManagementService.notifyBeforeChange(target, "sync");
+                    Path backup = backupDir.resolve(path);
+                    move(target, backup);
+                    undoLog.push(new String[] { path, backup.toString() });
+                }
+            }
+        } catch (IOException e) {
+            rollback(undoLog, basePath);
+            throw e;
+        }
+
+        for (String path : plan.upload) {
+            fileManagementService.notifyChanged(basePath.resolve(path));
+        }
+        for (String path : plan.delete) {
+            Path target = basePath.resolve(path);
+            fileManagementService.notifyChanged(target);
+            pruneEmptyParents(target.getParent(), fileManagementService.resolvePath(plan.path));
+        }
+    }
+
+    private void rollback(Deque<String[]> undoLog, Path basePath) {
+        for (String[] undo : undoLog) {
+            Path target = basePath.resolve(undo[0]);
+            try {
+                if (undo[1] != null) {
+                    move(Paths.get(undo[1]), target);
+                } else {
+                    Files.deleteIfExists(target);
+                }
+            } catch (IOException e) {
+                System.out.println("[SYNC] Rollback failed for " + undo[0] + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void move(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Remove folders emptied by deletes, stopping at the sync root
+     */
+    private void pruneEmptyParents(Path dir, Path root) throws IOException {
+        while (dir != null && dir.startsWith(root) && !dir.equals(root)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                if (stream.iterator().hasNext()) {
+                    return;
+                }
+            } catch (IOException e) {
+                return;
+            }
+            Files.deleteIfExists(dir);
+            fileManagementService.notifyChanged(dir);
+            dir = dir.getParent();
+        }
+    }
+
+    private void purge(Path workDir) {
+        if (!Files.exists(workDir)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(workDir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            System.out.println("[SYNC] Could not purge " + workDir + ": " + e.getMessage());
+        }
+    }
+
+    private void expirePlans() {
+        long now = System.currentTimeMillis();
+        plans.values().removeIf(plan -> now - plan.createdTime > PLAN_TTL);
+    }
+
+    private String normalize(Path path) {
+        return fileManagementService.getBasePath().relativize(path).toString().replace("\\", "/");
+    }
+
+    /**
+     * Files the client must upload and files the server will delete
+     */
+    public static class SyncPlan {
+        public String syncId;
+        public String path;
+        public List<String> upload = new ArrayList<>();
+        public List<String> delete = new ArrayList<>();
+        public long createdTime;
+
+        final Map<String, String> expected = new HashMap<>();
+
+        public SyncPlan() {
+        }
+    }
+
+    public static class SyncResult {
+        public String syncId;
+        public int uploaded;
+        public int deleted;
+        public long bytes;
+        public long startTime;
+        public long endTime;
+
+        public SyncResult() {
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.zab.ide.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaled previews of images under the webapp.
+ * Decoding runs on a small bounded pool; results are cached in memory
+ * (LRU by bytes) and on disk, keyed by path, size and the source mtime.
+ */
+@Service
+public class ThumbnailService implements FileChangeListener {
+
+    private static final int[] SIZES = { 64, 128, 256, 512 };
+    private static final long MAX_SOURCE_SIZE = 64L * 1024 * 1024;
+    private static final long MAX_MEMORY_BYTES = 32L * 1024 * 1024;
+    private static final long MAX_DISK_BYTES = 256L * 1024 * 1024;
+    private static final int DECODE_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ThreadPoolExecutor DECODE_POOL = new ThreadPoolExecutor(
+            DECODE_THREADS, DECODE_THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(64), r -> {
+                Thread t = new Thread(r, "thumbnail");
+                t.setDaemon(true);
+                return t;
+            });
+
+    @Autowired
+    private FileManagementService fileManagementService;
+
+    // access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Thumbnail> memoryCache = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes = -1;
+
+    @PostConstruct
+    public void init() {
+        fileManagementService.addChangeListener(this);
+    }
+
+    @Override
+    public synchronized void pathChanged(Path path) {
+        String prefix = fileManagementService.getBasePath().relativize(path).toString().replace("\\", "/");
+        Iterator<Map.Entry<String, Thumbnail>> it = memoryCache.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Thumbnail> entry = it.next();
+            String cachedPath = entry.getValue().path;
+            if (cachedPath.equals(prefix) || cachedPath.startsWith(prefix + "/")) {
+                memoryBytes -= entry.getValue().data.length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Thumbnail of an image, at most size pixels on its longer side.
+     * The size is rounded up to one of SIZES so the cache stays small.
+     */
+    public Thumbnail getThumbnail(String relativePath, int size) throws IOException {
+        Path filePath = fileManagementService.resolvePath(relativePath);
+        if (!Files.isRegularFile(filePath)) {
+            throw new IOException("File does not exist: " + relativePath);
+        }
+
+        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        if (attrs.size() > MAX_SOURCE_SIZE) {
+            throw new IOException("Image too large to preview: " + relativePath);
+        }
+        int bucket = bucket(size);
+        String path = fileManagementService.getBasePath().relativize(filePath).toString().replace("\\", "/");
+        String key = path + "|" + bucket;
+        long modified = attrs.lastModifiedTime().toMillis();
+
+        synchronized (this) {
+            Thumbnail cached = memoryCache.get(key);
+            if (cached != null && cached.sourceModified == modified && cached.sourceSize == attrs.size()) {
+                return cached;
+            }
+        }
+
+        Path diskFile = diskPath(path, bucket, modified, attrs.size());
+        Thumbnail thumbnail = readDisk(diskFile);
+        if (thumbnail == null) {
+            thumbnail = render(filePath, bucket);
+            writeDisk(diskFile, thumbnail);
+        }
+        thumbnail.path = path;
+        thumbnail.sourceModified = modified;
+        thumbnail.sourceSize = attrs.size();
+        thumbnail.size = bucket;
+        remember(key, thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * Entity tag of the thumbnail getThumbnail would return, from the source
+     * attributes alone, so a revalidation does not decode anything
+     */
+    public String etag(String relativePath, int size) throws IOException {
+        Path filePath = fileManagementService.resolvePath(relativePath);
+        if (!Files.isRegularFile(filePath)) {
+            throw new IOException("File does not exist: " + relativePath);
+        }
+        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        return etag(attrs.lastModifiedTime().toMillis(), attrs.size(), bucket(size));
+    }
+
+    public String etag(Thumbnail thumbnail) {
+        return etag(thumbnail.sourceModified, thumbnail.sourceSize, thumbnail.size);
+    }
+
+    private String etag(long modified, long sourceSize, int bucket) {
+        return "\"" + modified + "-" + sourceSize + "-" + bucket + "\"";
+    }
+
+    private int bucket(int size) {
+        for (int candidate : SIZES) {
+            if (size <= candidate) {
+                return candidate;
+            }
+        }
+        return SIZES[SIZES.length - 1];
+    }
+
+    /**
+     * Decode and scale on the bounded pool; a full queue is reported to the caller
+     */
+    private Thumbnail render(Path filePath, int size) throws IOException {
+        Future<Thumbnail> future;
+        try {
+            future = DECODE_POOL.submit(() -> scale(filePath, size));
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Thumbnail workers are busy, try again");
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Thumbnail interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not render thumbnail: " + cause.getMessage(), cause);
+        }
+    }
+
+    private Thumbnail scale(Path filePath, int size) throws IOException {
+        BufferedImage source;
+        try (ImageInputStream input = ImageIO.createImageInputStream(filePath.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Not a supported image: " + filePath.getFileName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                // Subsample while decoding so huge images never load at full resolution
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (size * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        double ratio = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        boolean alpha = source.getColorModel().hasAlpha();
+
+        BufferedImage scaled = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        String format = alpha ? "png" : "jpg";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(scaled, format, out);
+
+        Thumbnail thumbnail = new Thumbnail();
+        thumbnail.data = out.toByteArray();
+        thumbnail.contentType = alpha ? "image/png" : "image/jpeg";
+        return thumbnail;
+    }
+
+    private synchronized void remember(String key, Thumbnail thumbnail) {
+        Thumbnail previous = memoryCache.put(key, thumbnail);
+        if (previous != null) {
+            memoryBytes -= previous.data.length;
+        }
+        memoryBytes += thumbnail.data.length;
+
+        Iterator<Thumbnail> it = memoryCache.values().iterator();
+        while (memoryBytes > MAX_MEMORY_BYTES && it.hasNext()) {
+            memoryBytes -= it.next().data.length;
+            it.remove();
+        }
+    }
+
+    private Path thumbnailDir() {
+        String catalinaHome = System.getProperty("catalina.home");
+        return Paths.get(catalinaHome, "zabide", "thumbnails");
+    }
+
+    /**
+     * Disk entries are named by a hash of path, size and source mtime/length,
+     * so a changed source simply misses and its old entry ages out
+     */
+    private Path diskPath(String path, int size, long modified, long length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((path + "|" + size + "|" + modified + "|" + length)
+                    .getBytes(StandardCharsets.UTF_8));
+            return thumbnailDir().resolve(ManifestService.toHex(hash).substring(0, 40));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private Thumbnail readDisk(Path diskFile) {
+        for (String ext : new String[] { ".png", ".jpg" }) {
+            Path file = diskFile.resolveSibling(diskFile.getFileName() + ext);
+            try {
+                byte[] data = Files.readAllBytes(file);
+                // Touch on hit so disk eviction is least-recently-used
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                Thumbnail thumbnail = new Thumbnail();
+                thumbnail.data = data;
+                thumbnail.contentType = ext.equals(".png") ? "image/png" : "image/jpeg";
+                return thumbnail;
+            } catch (IOException e) {
+                // Not cached in this format
+            }
+        }
+        return null;
+    }
+
+    private void writeDisk(Path diskFile, Thumbnail thumbnail) {
+        String ext = thumbnail.contentType.equals("image/png") ? ".png" : ".jpg";
+        Path file = diskFile.resolveSibling(diskFile.getFileName() + ext);
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(UUID.randomUUID() + ".tmp");
+            Files.write(temp, thumbnail.data);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            trimDisk(thumbnail.data.length);
+        } catch (IOException e) {
+            System.out.println("[THUMBNAIL] Could not cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delete least recently used disk entries once the folder exceeds MAX_DISK_BYTES
+     */
+    private synchronized void trimDisk(long added) throws IOException {
+        if (diskBytes >= 0) {
+            diskBytes += added;
+            if (diskBytes <= MAX_DISK_BYTES) {
+                return;
+            }
+        }
+
+        List<Path> files = new ArrayList<>();
+        Map<Path, BasicFileAttributes> attributes = new LinkedHashMap<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(thumbnailDir())) {
+            for (Path file : stream) {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                files.add(file);
+                attributes.put(file, attrs);
+                total += attrs.size();
+            }
+        }
+
+        files.sort((a, b) -> attributes.get(a).lastModifiedTime().compareTo(attributes.get(b).lastModifiedTime()));
+        // Trim to 90% so the next few writes do not trigger another scan
+        for (Path file : files) {
+            if (total <= MAX_DISK_BYTES * 9 / 10) {
+                break;
+            }
+            total -= attributes.get(file).size();
+            Files.deleteIfExists(file);
+        }
+        diskBytes = total;
+    }
+
+    /**
+     * Encoded thumbnail plus the source state it was made from
+     */
+    public static class Thumbnail {
+        public byte[] data;
+        public String contentType;
+        public String path;
+        public long sourceModified;
+        public long sourceSize;
+        public int size;
+
+        public Thumbnail() {
+        }
+    }
+}
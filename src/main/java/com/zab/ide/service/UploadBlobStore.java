@@ -0,0 +1,209 @@
+package com.zab.ide.service;
+
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Content-addressed storage for completed uploads.
+ * Each distinct content is kept once as blobs/xx/&lt;sha256&gt;; the familiar
+ * completed/{name}/{name} entry is a hard link to its blob, so downloads
+ * and listings work unchanged. The index (name -&gt; digest) provides the
+ * reference counts: a blob is deleted once no name points at it.
+ */
+@Service
+public class UploadBlobStore {
+
+    private static final String UPLOAD_DIR = "zabftpupload";
+    private static final String BLOB_DIR = "blobs";
+    private static final String INDEX_FILE = "index.properties";
+
+    // name -> sha256 of the blob it links to; guarded by this
+    private final Map<String, String> names = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        try {
+            load();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[BLOBS] Could not load blob index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Put a finished upload in place under name. The digest comes from the
+     * upload itself, so a duplicate is recognised without reading the file:
+     * its temp file is dropped and the name linked to the existing blob.
+     *
+     * @return true when the content was already stored
+     */
+    public synchronized boolean store(String name, Path tempFile, String sha256, Path nameEntry) throws IOException {
+        Path blob = blobPath(sha256);
+        boolean duplicate = Files.isRegularFile(blob);
+        if (duplicate) {
+            Files.delete(tempFile);
+        } else {
+            Files.createDirectories(blob.getParent());
+            Files.move(tempFile, blob, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Files.createDirectories(nameEntry.getParent());
+        Path link = nameEntry.resolveSibling(UUID.randomUUID() + ".link");
+        try {
+            Files.createLink(link, blob);
+        } catch (UnsupportedOperationException | IOException e) {
+            // No hard links on this file system: keep a private copy instead
+            System.out.println("[BLOBS] Hard link failed for " + name + ", copying: " + e.getMessage());
+            Files.copy(blob, link, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(link, nameEntry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        String previous = names.put(name, sha256);
+        save();
+        if (previous != null && !previous.equals(sha256)) {
+            release(previous);
+        }
+        if (duplicate) {
+            System.out.println("[BLOBS] " + name + " has the same content as an existing upload; stored once");
+        }
+        return duplicate;
+    }
+
+    /**
+     * Drop a name; its blob goes when this was the last reference
+     */
+    public synchronized void remove(String name) throws IOException {
+        String sha256 = names.remove(name);
+        if (sha256 != null) {
+            save();
+            release(sha256);
+        }
+    }
+
+    /**
+     * Digest of the content stored under name, or null if the name is not in the store
+     */
+    public synchronized String digestOf(String name) {
+        return names.get(name);
+    }
+
+    public synchronized int referenceCount(String sha256) {
+        int count = 0;
+        for (String digest : names.values()) {
+            if (digest.equals(sha256)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void release(String sha256) throws IOException {
+        if (referenceCount(sha256) == 0) {
+            Files.deleteIfExists(blobPath(sha256));
+        }
+    }
+
+    private Path storeDir() {
+        String catalinaHome = System.getProperty("catalina.home");
+        return Paths.get(catalinaHome, UPLOAD_DIR, BLOB_DIR);
+    }
+
+    private Path blobPath(String sha256) {
+        return storeDir().resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    /**
+     * Load the index and drop names whose entry was deleted by hand, and
+     * with them any blob left unreferenced. Blobs no name points at at all,
+     * e.g. from a crash between storing a blob and saving the index, are
+     * swept as well.
+     */
+    private synchronized void load() throws IOException {
+        Path indexFile = storeDir().resolve(INDEX_FILE);
+        if (Files.isRegularFile(indexFile)) {
+            Properties index = new Properties();
+            try (InputStream in = Files.newInputStream(indexFile)) {
+                index.load(in);
+            }
+            for (String name : index.stringPropertyNames()) {
+                names.put(name, index.getProperty(name));
+            }
+        }
+
+        Path completedDir = storeDir().resolveSibling("completed");
+        Map<String, String> missing = new HashMap<>();
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            Path nameEntry = completedDir.resolve(entry.getKey()).resolve(entry.getKey());
+            if (!Files.isRegularFile(nameEntry)) {
+                missing.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!missing.isEmpty()) {
+            names.keySet().removeAll(missing.keySet());
+            save();
+            for (String sha256 : missing.values()) {
+                release(sha256);
+            }
+        }
+        int swept = sweepOrphans();
+        System.out.println("[BLOBS] Loaded " + names.size() + " names"
+                + (swept > 0 ? ", removed " + swept + " unreferenced blobs" : ""));
+    }
+
+    /**
+     * Delete files under blobs/xx/ whose digest is not in the index
+     *
+     * @return number of files deleted
+     */
+    private int sweepOrphans() throws IOException {
+        Path storeDir = storeDir();
+        if (!Files.isDirectory(storeDir)) {
+            return 0;
+        }
+        Set<String> referenced = new HashSet<>(names.values());
+        int swept = 0;
+        // Only the two-character shard folders hold blobs; the index sits at the top
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(storeDir, "??")) {
+            for (Path shard : shards) {
+                if (!Files.isDirectory(shard)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> blobs = Files.newDirectoryStream(shard)) {
+                    for (Path blob : blobs) {
+                        if (Files.isRegularFile(blob) && !referenced.contains(blob.getFileName().toString())) {
+                            Files.deleteIfExists(blob);
+                            swept++;
+                        }
+                    }
+                }
+            }
+        }
+        return swept;
+    }
+
+    private void save() throws IOException {
+        Properties index = new Properties();
+        index.putAll(names);
+        Path indexFile = storeDir().resolve(INDEX_FILE);
+        Files.createDirectories(indexFile.getParent());
+        Path temp = indexFile.resolveSibling(INDEX_FILE + ".part");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            index.store(out, "completed upload name -> content sha256");
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
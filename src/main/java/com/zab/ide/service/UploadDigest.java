@@ -0,0 +1,74 @@
+package com.zab.ide.service;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Running SHA-256 of an upload plus the SHA-256 of each fixed-size segment,
+ * fed in file order by the upload's digest frontier. Both come out of the
+ * same pass over the bytes.
+ */
+final class UploadDigest {
+
+    final long segmentSize;
+
+    private MessageDigest file;
+    private MessageDigest segment;
+    private long segmentFill;
+    private List<String> segments;
+
+    UploadDigest(long segmentSize) {
+        this.segmentSize = segmentSize;
+        this.file = UploadSession.newDigest();
+        this.segment = UploadSession.newDigest();
+        this.segments = new ArrayList<>();
+    }
+
+    void update(byte[] data, int offset, int length) {
+        file.update(data, offset, length);
+        while (length > 0) {
+            int part = (int) Math.min(length, segmentSize - segmentFill);
+            segment.update(data, offset, part);
+            segmentFill += part;
+            offset += part;
+            length -= part;
+            if (segmentFill == segmentSize) {
+                segments.add(ManifestService.toHex(segment.digest()));
+                segmentFill = 0;
+            }
+        }
+    }
+
+    /**
+     * Close the last partial segment and return the whole-file hash.
+     * The state is consumed; call once.
+     */
+    String finish() {
+        if (segmentFill > 0) {
+            segments.add(ManifestService.toHex(segment.digest()));
+            segmentFill = 0;
+        }
+        return ManifestService.toHex(file.digest());
+    }
+
+    List<String> segmentHashes() {
+        return segments;
+    }
+
+    /**
+     * Independent copy, so a chunk that fails mid-stream can be rolled back
+     */
+    UploadDigest copy() {
+        UploadDigest copy = new UploadDigest(segmentSize);
+        try {
+            copy.file = (MessageDigest) file.clone();
+            copy.segment = (MessageDigest) segment.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digest cannot be cloned", e);
+        }
+        copy.segmentFill = segmentFill;
+        copy.segments = new ArrayList<>(segments);
+        return copy;
+    }
+}
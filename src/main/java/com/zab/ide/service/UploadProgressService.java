@@ -0,0 +1,270 @@
+package com.zab.ide.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.zab.ide.model.UploadProgress;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes upload progress to browsers over Server-Sent Events.
+ * Chunk writers only bump lock-free counters on the session; one sampler
+ * thread turns them into throughput and ETA every TICK_MS and sends each
+ * client a single batched event for the uploads that moved.
+ */
+@Service
+public class UploadProgressService {
+
+    private static final long TICK_MS = 500;
+    private static final long HEARTBEAT_SECONDS = 30;
+    private static final long EMITTER_TIMEOUT_MS = 30 * 60 * 1000L;
+    private static final int MAX_CLIENTS = 64;
+    private static final int MAX_CLIENTS_PER_ADDRESS = 4;
+    private static final int MAX_UPLOADS_PER_CLIENT = 256;
+    // weight of the newest sample in the smoothed rate
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private final Map<String, Tracked> uploads = new ConcurrentHashMap<>();
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "upload-progress");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public UploadProgressService() {
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (Client client : clients.values()) {
+            client.emitter.complete();
+        }
+        clients.clear();
+    }
+
+    void track(UploadSession session) {
+        uploads.put(session.uploadId, new Tracked(session));
+    }
+
+    /**
+     * Stop sampling an upload and tell its watchers how it ended
+     */
+    void untrack(String uploadId, String state) {
+        Tracked tracked = uploads.remove(uploadId);
+        if (tracked == null) {
+            return;
+        }
+        Map<String, Object> data = toMap(tracked);
+        data.put("state", state);
+        for (Client client : clients.values()) {
+            if (client.watches(uploadId)) {
+                send(client, "finished", data);
+            }
+        }
+    }
+
+    /**
+     * Current progress of one upload, or null if it is not running
+     */
+    public UploadProgress getProgress(String uploadId) {
+        Tracked tracked = uploads.get(uploadId);
+        return tracked != null ? snapshot(tracked) : null;
+    }
+
+    /**
+     * Open a progress stream for the given uploads (all uploads when empty).
+     * The first event ("connected") carries the clientId for later subscribe calls.
+     * Unknown or finished uploads throw IllegalArgumentException; too many
+     * open streams, in total or from the same address, IllegalStateException.
+     */
+    public SseEmitter connect(List<String> uploadIds, String address) throws IOException {
+        if (uploadIds != null && uploadIds.size() > MAX_UPLOADS_PER_CLIENT) {
+            throw new IllegalArgumentException("At most " + MAX_UPLOADS_PER_CLIENT + " uploads per stream");
+        }
+        if (uploadIds != null) {
+            for (String uploadId : uploadIds) {
+                if (!uploads.containsKey(uploadId)) {
+                    throw new IllegalArgumentException("Unknown upload: " + uploadId);
+                }
+            }
+        }
+        Client client = new Client(UUID.randomUUID().toString(), address, new SseEmitter(EMITTER_TIMEOUT_MS),
+                uploadIds == null || uploadIds.isEmpty());
+        if (uploadIds != null) {
+            client.uploadIds.addAll(uploadIds);
+        }
+        // Check and register together, so parallel connects cannot overshoot the limits
+        synchronized (clients) {
+            if (clients.size() >= MAX_CLIENTS) {
+                throw new IllegalStateException("Too many open progress streams");
+            }
+            int fromAddress = 0;
+            for (Client other : clients.values()) {
+                if (other.address.equals(address)) {
+                    fromAddress++;
+                }
+            }
+            if (fromAddress >= MAX_CLIENTS_PER_ADDRESS) {
+                throw new IllegalStateException("Too many open progress streams from " + address);
+            }
+            clients.put(client.id, client);
+        }
+
+        client.emitter.onCompletion(() -> clients.remove(client.id));
+        client.emitter.onTimeout(() -> clients.remove(client.id));
+        client.emitter.onError(e -> clients.remove(client.id));
+
+        Map<String, Object> hello = new HashMap<String, Object>();
+        hello.put("clientId", client.id);
+        hello.put("uploads", collect(client, false));
+        client.emitter.send(SseEmitter.event().name("connected").data(hello));
+        return client.emitter;
+    }
+
+    /**
+     * Add a running upload to an open stream, e.g. one started after connecting
+     */
+    public void subscribe(String clientId, String uploadId) throws IOException {
+        Client client = clients.get(clientId);
+        if (client == null) {
+            throw new IOException("Unknown client: " + clientId);
+        }
+        if (!uploads.containsKey(uploadId)) {
+            throw new IOException("Unknown upload: " + uploadId);
+        }
+        if (client.uploadIds.size() >= MAX_UPLOADS_PER_CLIENT) {
+            throw new IOException("At most " + MAX_UPLOADS_PER_CLIENT + " uploads per stream");
+        }
+        client.uploadIds.add(uploadId);
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (Tracked tracked : uploads.values()) {
+            long transferred = tracked.session.transferredBytes();
+            long elapsed = now - tracked.sampleTime;
+            if (elapsed <= 0) {
+                continue;
+            }
+            double instant = (transferred - tracked.sampleBytes) * 1000.0 / elapsed;
+            tracked.rate = tracked.sampled ? RATE_SMOOTHING * instant + (1 - RATE_SMOOTHING) * tracked.rate : instant;
+            tracked.sampled = true;
+            tracked.changed = transferred != tracked.sampleBytes || tracked.rate >= 1;
+            tracked.sampleBytes = transferred;
+            tracked.sampleTime = now;
+        }
+
+        for (Client client : clients.values()) {
+            List<Map<String, Object>> batch = collect(client, true);
+            if (!batch.isEmpty()) {
+                send(client, "progress", batch);
+            }
+        }
+    }
+
+    private List<Map<String, Object>> collect(Client client, boolean changedOnly) {
+        List<Map<String, Object>> batch = new ArrayList<>();
+        for (Tracked tracked : uploads.values()) {
+            if ((!changedOnly || tracked.changed) && client.watches(tracked.session.uploadId)) {
+                batch.add(toMap(tracked));
+            }
+        }
+        return batch;
+    }
+
+    private UploadProgress snapshot(Tracked tracked) {
+        UploadSession session = tracked.session;
+        UploadProgress progress = new UploadProgress();
+        progress.totalBytes = session.totalBytes;
+        progress.uploadedBytes = Math.min(session.totalBytes, session.receivedBytes() + session.inFlightBytes());
+        progress.startTime = session.startTime;
+        progress.bytesPerSecond = (long) tracked.rate;
+        long remaining = progress.totalBytes - progress.uploadedBytes;
+        progress.etaSeconds = remaining <= 0 ? 0 : progress.bytesPerSecond > 0 ? remaining / progress.bytesPerSecond : -1;
+        return progress;
+    }
+
+    private Map<String, Object> toMap(Tracked tracked) {
+        UploadProgress progress = snapshot(tracked);
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("uploadId", tracked.session.uploadId);
+        data.put("fileName", tracked.session.fileName);
+        data.put("totalBytes", progress.totalBytes);
+        data.put("uploadedBytes", progress.uploadedBytes);
+        data.put("startTime", progress.startTime);
+        data.put("bytesPerSecond", progress.bytesPerSecond);
+        data.put("etaSeconds", progress.etaSeconds);
+        return data;
+    }
+
+    private void heartbeat() {
+        for (Client client : clients.values()) {
+            try {
+                client.emitter.send(SseEmitter.event().comment("ping"));
+            } catch (IOException | IllegalStateException e) {
+                clients.remove(client.id);
+            }
+        }
+    }
+
+    private void send(Client client, String name, Object data) {
+        try {
+            client.emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            clients.remove(client.id);
+        }
+    }
+
+    /**
+     * Sampler state; written only by the scheduler thread
+     */
+    private static class Tracked {
+        final UploadSession session;
+        long sampleBytes;
+        long sampleTime;
+        boolean sampled;
+        volatile double rate;
+        volatile boolean changed;
+
+        Tracked(UploadSession session) {
+            this.session = session;
+            this.sampleTime = session.startTime;
+        }
+    }
+
+    private static class Client {
+        final String id;
+        final String address;
+        final SseEmitter emitter;
+        final boolean all;
+        final Set<String> uploadIds = ConcurrentHashMap.newKeySet();
+
+        Client(String id, String address, SseEmitter emitter, boolean all) {
+            this.id = id;
+            this.address = address;
+            this.emitter = emitter;
+            this.all = all;
+        }
+
+        boolean watches(String uploadId) {
+            return all || uploadIds.contains(uploadId);
+        }
+    }
+}
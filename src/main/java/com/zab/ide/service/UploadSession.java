@@ -0,0 +1,379 @@
+package com.zab.ide.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * State of one chunked upload: the preallocated temp file, its shared
+ * channel for positional writes, and the byte ranges received so far.
+ *
+ * The whole-file SHA-256 (and the per-segment hashes of the download
+ * manifest) is kept incrementally. A chunk that starts exactly
+ * at the digest frontier is hashed while it streams in; chunks that arrive
+ * ahead of the frontier are hashed from disk (usually still in the page
+ * cache) once the gap before them fills. Sequential uploads are never reread.
+ */
+class UploadSession {
+
+    final String uploadId;
+    final String fileName;
+    final long totalBytes;
+    final long chunkSize;
+    final long startTime;
+    final Path tempFile;
+
+    // received ranges, start -> end (exclusive), merged and non-overlapping
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    private FileChannel channel;
+
+    // read by the progress sampler without taking the session lock
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final LongAdder inFlightBytes = new LongAdder();
+    private final LongAdder transferredBytes = new LongAdder();
+
+    // serialises journal writes so an older snapshot never overwrites a newer one
+    final Object journalLock = new Object();
+    private volatile long lastActivity;
+
+    // fixed segment size of the download manifest
+    static final long SEGMENT_SIZE = 8L * 1024 * 1024;
+
+    private final ReentrantLock digestLock = new ReentrantLock();
+    private UploadDigest digest = new UploadDigest(SEGMENT_SIZE);
+    private long digestedUpTo;
+    private String sha256;
+
+    UploadSession(String uploadId, String fileName, long totalBytes, long chunkSize, long startTime, Path tempFile) {
+        this.uploadId = uploadId;
+        this.fileName = fileName;
+        this.totalBytes = totalBytes;
+        this.chunkSize = chunkSize;
+        this.startTime = startTime;
+        this.tempFile = tempFile;
+        this.lastActivity = startTime;
+    }
+
+    void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    long lastActivity() {
+        return lastActivity;
+    }
+
+    void restoreActivity(long time) {
+        lastActivity = time;
+    }
+
+    /**
+     * Channel shared by all chunk writers; positional writes do not move a
+     * shared file pointer, so concurrent chunks never interfere
+     */
+    synchronized FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Record [start, end) as received, merging with neighbouring ranges
+     */
+    synchronized void markReceived(long start, long end) {
+        if (end <= start) {
+            return;
+        }
+        Map.Entry<Long, Long> before = ranges.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        Map.Entry<Long, Long> next = ranges.ceilingEntry(start);
+        while (next != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            ranges.remove(next.getKey());
+            next = ranges.ceilingEntry(start);
+        }
+        ranges.put(start, end);
+
+        long total = 0;
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            total += range.getValue() - range.getKey();
+        }
+        receivedBytes.set(total);
+    }
+
+    long receivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * True when all of [start, end) has already been received
+     */
+    synchronized boolean isReceived(long start, long end) {
+        Map.Entry<Long, Long> range = ranges.floorEntry(start);
+        return range != null && range.getValue() >= end;
+    }
+
+    /**
+     * True when any byte of [start, end) has already been received
+     */
+    synchronized boolean overlapsReceived(long start, long end) {
+        Map.Entry<Long, Long> before = ranges.floorEntry(start);
+        if (before != null && before.getValue() > start) {
+            return true;
+        }
+        Long next = ranges.higherKey(start);
+        return next != null && next < end;
+    }
+
+    /**
+     * Count bytes a chunk writer has just put on disk
+     */
+    void written(long bytes) {
+        inFlightBytes.add(bytes);
+        transferredBytes.add(bytes);
+    }
+
+    /**
+     * A chunk writer finished (or failed); its bytes are no longer in flight
+     */
+    void chunkDone(long bytes) {
+        inFlightBytes.add(-bytes);
+    }
+
+    long inFlightBytes() {
+        return inFlightBytes.sum();
+    }
+
+    /**
+     * Every byte written so far, including retried chunks; drives the throughput figure
+     */
+    long transferredBytes() {
+        return transferredBytes.sum();
+    }
+
+    /**
+     * End of the contiguous run from offset 0 (where an un-addressed chunk goes)
+     */
+    synchronized long contiguousEnd() {
+        Long first = ranges.get(0L);
+        return first != null ? first : 0;
+    }
+
+    synchronized boolean isComplete() {
+        Long first = ranges.get(0L);
+        return totalBytes == 0 || (first != null && first >= totalBytes);
+    }
+
+    synchronized List<long[]> receivedRanges() {
+        List<long[]> result = new ArrayList<>();
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            result.add(new long[] { range.getKey(), range.getValue() });
+        }
+        return result;
+    }
+
+    /**
+     * Received ranges as "start-end,start-end", for the session journal
+     */
+    synchronized String rangesToString() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            if (text.length() > 0) {
+                text.append(',');
+            }
+            text.append(range.getKey()).append('-').append(range.getValue());
+        }
+        return text.toString();
+    }
+
+    void restoreRanges(String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        for (String range : text.split(",")) {
+            int dash = range.indexOf('-');
+            markReceived(Long.parseLong(range.substring(0, dash)), Long.parseLong(range.substring(dash + 1)));
+        }
+    }
+
+    synchronized List<long[]> missingRanges() {
+        List<long[]> result = new ArrayList<>();
+        long cursor = 0;
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            if (range.getKey() > cursor) {
+                result.add(new long[] { cursor, range.getKey() });
+            }
+            cursor = Math.max(cursor, range.getValue());
+        }
+        if (cursor < totalBytes) {
+            result.add(new long[] { cursor, totalBytes });
+        }
+        return result;
+    }
+
+    /**
+     * Take over the digest frontier for a chunk starting at position.
+     * On success the caller feeds the chunk bytes to the returned digest and
+     * must then call releaseFrontier (or abandonFrontier on failure).
+     *
+     * @return the digest to update, or null if the chunk is not at the frontier
+     */
+    UploadDigest claimFrontier(long position) {
+        if (!digestLock.tryLock()) {
+            return null;
+        }
+        if (digestedUpTo != position) {
+            digestLock.unlock();
+            return null;
+        }
+        return digest;
+    }
+
+    /**
+     * The claimed chunk was hashed up to newFrontier; continue from disk
+     */
+    void releaseFrontier(long newFrontier) {
+        try {
+            digestedUpTo = newFrontier;
+            catchUpLocked();
+        } finally {
+            digestLock.unlock();
+        }
+        advanceDigest();
+    }
+
+    /**
+     * The claimed chunk failed; put the digest back to the state it had
+     */
+    void abandonFrontier(UploadDigest saved) {
+        digest = saved;
+        digestLock.unlock();
+    }
+
+    /**
+     * Hash any received data directly after the frontier. If another thread
+     * holds the digest it re-checks after unlocking, so no range is missed.
+     */
+    void advanceDigest() {
+        while (canAdvance()) {
+            if (!digestLock.tryLock()) {
+                return;
+            }
+            try {
+                catchUpLocked();
+            } finally {
+                digestLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * SHA-256 of each SEGMENT_SIZE segment; valid after finishDigest
+     */
+    List<String> segmentHashes() {
+        return digest.segmentHashes();
+    }
+
+    /**
+     * Hex SHA-256 of the whole file; call once every byte has arrived
+     */
+    String finishDigest() throws IOException {
+        digestLock.lock();
+        try {
+            if (sha256 != null) {
+                return sha256;
+            }
+            catchUpLocked();
+            if (digestedUpTo < totalBytes) {
+                throw new IOException("Upload digest incomplete at byte " + digestedUpTo);
+            }
+            sha256 = digest.finish();
+            return sha256;
+        } finally {
+            digestLock.unlock();
+        }
+    }
+
+    private synchronized boolean canAdvance() {
+        Map.Entry<Long, Long> range = ranges.floorEntry(digestedUpTo);
+        return range != null && range.getValue() > digestedUpTo;
+    }
+
+    private void catchUpLocked() {
+        byte[] buffer = null;
+        while (true) {
+            long end;
+            synchronized (this) {
+                Map.Entry<Long, Long> range = ranges.floorEntry(digestedUpTo);
+                end = range != null ? range.getValue() : digestedUpTo;
+            }
+            if (end <= digestedUpTo) {
+                return;
+            }
+            try {
+                if (buffer == null) {
+                    buffer = new byte[1024 * 1024];
+                }
+                FileChannel ch = channel();
+                while (digestedUpTo < end) {
+                    ByteBuffer window = ByteBuffer.wrap(buffer, 0,
+                            (int) Math.min(buffer.length, end - digestedUpTo));
+                    int read = ch.read(window, digestedUpTo);
+                    if (read <= 0) {
+                        return;
+                    }
+                    digest.update(buffer, 0, read);
+                    digestedUpTo += read;
+                }
+            } catch (IOException e) {
+                // Retried on the next advance or at finish
+                return;
+            }
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * One character per chunk: '1' when the whole chunk has arrived
+     */
+    synchronized String chunkBitmap() {
+        int chunks = (int) ((totalBytes + chunkSize - 1) / chunkSize);
+        StringBuilder bitmap = new StringBuilder(chunks);
+        for (int i = 0; i < chunks; i++) {
+            long start = (long) i * chunkSize;
+            long end = Math.min(start + chunkSize, totalBytes);
+            Map.Entry<Long, Long> range = ranges.floorEntry(start);
+            bitmap.append(range != null && range.getValue() >= end ? '1' : '0');
+        }
+        return bitmap.toString();
+    }
+}